@@ -3,6 +3,13 @@ package org.scoverage;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 public class ScalaCrossVersionAggregationTest extends ScoverageFunctionalTest {
 
     public ScalaCrossVersionAggregationTest() {
@@ -27,10 +34,33 @@ public class ScalaCrossVersionAggregationTest extends ScoverageFunctionalTest {
         assertCoverage(100.0);
     }
 
+    @Test
+    public void aggregateKeepsTheStatementsOfEveryModule() throws Exception {
+
+        run("clean", ScoveragePlugin.getAGGREGATE_NAME());
+
+        // the ids of the statements of the scala 3 modules start at 0, rather than at 1
+        int statements = 0;
+        for (String module : new String[]{"2_12", "2_13", "3_2", "3_4"}) {
+            statements += statementCount(reportDir(projectDir().toPath().resolve(module).toFile()));
+        }
+        Assert.assertEquals(statements, statementCount(reportDir()));
+    }
+
+    private int statementCount(File reportDir) throws IOException {
+
+        String xml = new String(Files.readAllBytes(resolve(reportDir, "scoverage.xml").toPath()), StandardCharsets.UTF_8);
+        Matcher matcher = Pattern.compile("statement-count=\"(\\d+)\"").matcher(xml);
+        Assert.assertTrue(matcher.find());
+        return Integer.parseInt(matcher.group(1));
+    }
+
     private void assertAggregationFilesExist() {
 
         Assert.assertTrue(resolve(reportDir(), "index.html").exists());
         Assert.assertTrue(resolve(reportDir(), "org/hello/World2_12.scala.html").exists());
         Assert.assertTrue(resolve(reportDir(), "org/hello/World2_13.scala.html").exists());
+        Assert.assertTrue(resolve(reportDir(), "org/hello/World3_2.scala.html").exists());
+        Assert.assertTrue(resolve(reportDir(), "org/hello/World3_4.scala.html").exists());
     }
 }
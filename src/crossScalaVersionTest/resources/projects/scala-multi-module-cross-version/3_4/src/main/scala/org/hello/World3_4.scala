@@ -0,0 +1,9 @@
+package org.hello
+
+class World3_4 {
+
+  def foo(): String = {
+    val s = "3" + "4"
+    s
+  }
+}
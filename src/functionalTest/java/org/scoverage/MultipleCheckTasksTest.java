@@ -70,6 +70,17 @@ public abstract class MultipleCheckTasksTest extends ScoverageFunctionalTest {
             assertOutput(result, CoverageType.Line, 0.3);
         }
     }
+    public static class LineCheckWithoutCobertura extends MultipleCheckTasksTest {
+        public LineCheckWithoutCobertura() {
+            super("line-check-without-cobertura", true);
+        }
+        @Override
+        protected void assertResult(AssertableBuildResult result) {
+            result.assertTaskSucceeded(ScoveragePlugin.getCHECK_NAME());
+            assertOutput(result, CoverageType.Line, 0.3);
+            Assert.assertFalse(resolve(reportDir(), "cobertura.xml").exists());
+        }
+    }
     public static class OldAndNewSyntax extends MultipleCheckTasksTest {
         public OldAndNewSyntax() {
             super("old-and-new-syntax", false);
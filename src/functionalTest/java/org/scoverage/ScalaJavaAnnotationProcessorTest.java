@@ -19,6 +19,8 @@ public class ScalaJavaAnnotationProcessorTest extends ScoverageFunctionalTest {
                 ScoveragePlugin.getAGGREGATE_NAME());
 
         result.assertTaskSkipped("java_only:" + ScoveragePlugin.getCOMPILE_NAME());
+        // the scala classes are compiled against the java classes of main, processed only once
+        result.assertTaskOutcome("mixed_scala_java:compileScoverageJava", TaskOutcome.NO_SOURCE);
 
         result.assertTaskSkipped(ScoveragePlugin.getREPORT_NAME());
         result.assertTaskSucceeded("mixed_scala_java:" + ScoveragePlugin.getREPORT_NAME());
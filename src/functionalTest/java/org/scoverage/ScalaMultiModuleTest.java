@@ -1,10 +1,23 @@
 package org.scoverage;
 
+import org.codehaus.groovy.runtime.ResourceGroovyMethods;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
 import org.junit.Assert;
 import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
 
 public class ScalaMultiModuleTest extends ScoverageFunctionalTest {
 
@@ -12,6 +25,9 @@ public class ScalaMultiModuleTest extends ScoverageFunctionalTest {
         super("scala-multi-module");
     }
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void reportScoverage() {
 
@@ -290,6 +306,158 @@ public class ScalaMultiModuleTest extends ScoverageFunctionalTest {
         Assert.assertFalse(resolve(buildDir(resolve(projectDir(), "common")), "classes/scala/scoverage/org/hello/common/WorldCommon.class").exists());
     }
 
+    @Test
+    public void aggregateScoverageWithoutReportsDependsOnTheDataOnly() {
+
+        AssertableBuildResult result = dryRun("clean", ScoveragePlugin.getAGGREGATE_NAME(), "-PaggregateWithoutReports");
+
+        result.assertTaskExists(ScoveragePlugin.getAGGREGATE_NAME());
+        result.assertTaskExists("a:test");
+        result.assertTaskExists("b:test");
+        result.assertTaskExists("common:test");
+        result.assertTaskExists("a:" + ScoveragePlugin.getPRUNE_NAME());
+        result.assertTaskDoesntExist(ScoveragePlugin.getREPORT_NAME());
+        result.assertTaskDoesntExist("a:" + ScoveragePlugin.getREPORT_NAME());
+        result.assertTaskDoesntExist("b:" + ScoveragePlugin.getREPORT_NAME());
+        result.assertTaskDoesntExist("common:" + ScoveragePlugin.getREPORT_NAME());
+        result.assertTaskDoesntExist("a:reportTestScoverage");
+    }
+
+    @Test
+    public void aggregateScoverageWithoutReports() throws Exception {
+
+        AssertableBuildResult result = run("clean", ScoveragePlugin.getAGGREGATE_NAME(), "-PaggregateWithoutReports");
+
+        result.assertTaskSucceeded(ScoveragePlugin.getAGGREGATE_NAME());
+        result.assertTaskDoesntExist("a:" + ScoveragePlugin.getREPORT_NAME());
+
+        // the tests of every project were run with the instrumented classes
+        assertAggregationFilesExist();
+        assertCoverage(100.0);
+        Assert.assertFalse(resolve(reportDir(projectDir().toPath().resolve("a").toFile()), "index.html").exists());
+    }
+
+    @Test
+    public void aggregateScoverageReadsTheMergedData() throws Exception {
+
+        AssertableBuildResult result = run("clean", ScoveragePlugin.getAGGREGATE_NAME());
+
+        result.assertTaskSucceeded(ScoveragePlugin.getMERGE_NAME());
+        result.assertTaskSucceeded(ScoveragePlugin.getAGGREGATE_NAME());
+        // the sub-projects have no sub-projects of their own, so their data is merged as it is
+        result.assertTaskDoesntExist("a:" + ScoveragePlugin.getMERGE_NAME());
+
+        Assert.assertTrue(resolve(buildDir(), ScoveragePlugin.getMERGED_DATA_DIR() + "/scoverage.coverage").exists());
+        assertAggregationFilesExist();
+        assertCoverage(100.0);
+    }
+
+    @Test
+    public void aggregateScoverageWithConfigurationOnDemand() throws Exception {
+
+        // the data of the sub-projects is resolved through their variants, which configures them when needed
+        AssertableBuildResult result = run("clean", ScoveragePlugin.getAGGREGATE_NAME(), "--configure-on-demand",
+                "--parallel");
+
+        result.assertTaskSucceeded(ScoveragePlugin.getMERGE_NAME());
+        result.assertTaskSucceeded(ScoveragePlugin.getAGGREGATE_NAME());
+
+        assertAllReportFilesExist();
+        assertCoverage(100.0);
+    }
+
+    @Test
+    public void aggregateScoverageWithLimitedParallelism() throws Exception {
+
+        AssertableBuildResult result = run("clean", ScoveragePlugin.getAGGREGATE_NAME(), "-PaggregationParallelism=2");
+
+        result.assertTaskSucceeded(ScoveragePlugin.getAGGREGATE_NAME());
+
+        assertAggregationFilesExist();
+        assertCoverage(100.0);
+    }
+
+    @Test
+    public void mergeScoverageDataReusesSnapshotsOfUnchangedData() throws Exception {
+
+        // the aggregation only reads the merged data, so the merge is the one reading several data directories
+        run("clean", ScoveragePlugin.getAGGREGATE_NAME());
+        AssertableBuildResult result = run(ScoveragePlugin.getMERGE_NAME(), "--rerun", "--info");
+
+        result.assertTaskSucceeded(ScoveragePlugin.getMERGE_NAME());
+        Assert.assertTrue(result.getResult().getOutput().contains("Reusing snapshot of unchanged data"));
+        Assert.assertFalse(result.getResult().getOutput().contains("Creating snapshot of data"));
+
+        assertAggregationFilesExist();
+        assertCoverage(100.0);
+    }
+
+    @Test
+    public void mergeScoverageDataReusesSnapshotsOfARelocatedProject() throws Exception {
+
+        run("clean", ScoveragePlugin.getAGGREGATE_NAME());
+        File relocatedDir = temporaryFolder.newFolder("relocated");
+        copy(projectDir().toPath(), relocatedDir.toPath());
+
+        // the data is merged as it is, without the tasks producing it, whose inputs include absolute paths
+        List<String> arguments = new ArrayList<>(getVersionAgruments());
+        arguments.addAll(Arrays.asList(ScoveragePlugin.getMERGE_NAME(), "--rerun", "-x", ScoveragePlugin.getCOMPILE_NAME(),
+                "-x", ScoveragePlugin.getPRUNE_NAME(), "-x", "test", "--info"));
+        BuildResult result = GradleRunner.create()
+                .withProjectDir(relocatedDir)
+                .withPluginClasspath()
+                .withArguments(arguments)
+                .forwardOutput()
+                .build();
+
+        Assert.assertEquals(TaskOutcome.SUCCESS, result.task(":" + ScoveragePlugin.getMERGE_NAME()).getOutcome());
+        Assert.assertTrue(result.getOutput().contains("Reusing snapshot of unchanged data"));
+        Assert.assertFalse(result.getOutput().contains("Creating snapshot of data"));
+    }
+
+    @Test
+    public void aggregateScoverageFromBuildCache() throws Exception {
+
+        // the root report is excluded, as it shares its output directory with the aggregation (which prevents caching)
+        String excludeRootReport = ":" + ScoveragePlugin.getREPORT_NAME();
+
+        run("clean", ScoveragePlugin.getAGGREGATE_NAME(), "-x", excludeRootReport, "--build-cache");
+        ResourceGroovyMethods.deleteDir(reportDir());
+        AssertableBuildResult result = run(ScoveragePlugin.getAGGREGATE_NAME(), "-x", excludeRootReport, "--build-cache");
+
+        result.assertTaskOutcome(ScoveragePlugin.getAGGREGATE_NAME(), TaskOutcome.FROM_CACHE);
+
+        assertAggregationFilesExist();
+    }
+
+    @Test
+    public void aggregateScoverageWithConfigurationCache() throws Exception {
+
+        run("clean", ScoveragePlugin.getAGGREGATE_NAME(), ScoveragePlugin.getCHECK_NAME(), "--configuration-cache");
+        AssertableBuildResult result = run("clean", ScoveragePlugin.getAGGREGATE_NAME(), ScoveragePlugin.getCHECK_NAME(),
+                "--configuration-cache");
+
+        Assert.assertTrue(result.getResult().getOutput().contains("Reusing configuration cache."));
+        result.assertTaskSucceeded(ScoveragePlugin.getAGGREGATE_NAME());
+        result.assertTaskSucceeded(ScoveragePlugin.getCHECK_NAME());
+
+        assertAllReportFilesExist();
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Path copy = target.resolve(source.relativize(path).toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(copy);
+                } else {
+                    Files.copy(path, copy);
+                }
+            }
+        }
+    }
+
     private void assertAllReportFilesExist() {
 
         assertRootReportFilesExist();
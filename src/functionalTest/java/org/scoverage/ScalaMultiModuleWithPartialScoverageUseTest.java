@@ -17,4 +17,13 @@ public class ScalaMultiModuleWithPartialScoverageUseTest extends ScoverageFuncti
         result.assertTaskExists("b:" + ScoveragePlugin.getREPORT_NAME());
     }
 
+    @Test
+    public void aggregateScoverageLeavesOutTheSubProjectsWithoutScoverage() {
+
+        AssertableBuildResult result = dryRun("clean", ScoveragePlugin.getAGGREGATE_NAME());
+
+        result.assertTaskExists(ScoveragePlugin.getAGGREGATE_NAME());
+        result.assertTaskExists("b:" + ScoveragePlugin.getREPORT_NAME());
+        result.assertTaskDoesntExist("a:test");
+    }
 }
@@ -1,9 +1,14 @@
 package org.scoverage;
 
+import org.gradle.testkit.runner.TaskOutcome;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
 
 public class ScalaSingleModuleTest extends ScoverageFunctionalTest {
@@ -45,11 +50,23 @@ public class ScalaSingleModuleTest extends ScoverageFunctionalTest {
         AssertableBuildResult result = dryRun("clean", ScoveragePlugin.getREPORT_NAME());
 
         result.assertTaskExists(ScoveragePlugin.getCOMPILE_NAME());
+        result.assertTaskExists(ScoveragePlugin.getPRUNE_NAME());
         result.assertTaskExists(ScoveragePlugin.getREPORT_NAME());
         result.assertTaskDoesntExist(ScoveragePlugin.getAGGREGATE_NAME());
         result.assertTaskDoesntExist(ScoveragePlugin.getCHECK_NAME());
     }
 
+    @Test
+    public void helpDoesNotRealizeScoverageTasks() {
+
+        AssertableBuildResult result = run("help", "-PlogRealizedTasks");
+
+        String output = result.getResult().getOutput();
+        Assert.assertFalse(output.contains("Realized task :reportTestScoverage"));
+        Assert.assertFalse(output.contains("Realized task :" + ScoveragePlugin.getREPORT_NAME()));
+        Assert.assertFalse(output.contains("Realized task :" + ScoveragePlugin.getCHECK_NAME()));
+    }
+
     @Test
     public void aggregateScoverage() {
 
@@ -72,6 +89,21 @@ public class ScalaSingleModuleTest extends ScoverageFunctionalTest {
         assertCoverage(50.0);
     }
 
+    @Test
+    public void checkScoverageWithConfigurationCache() throws Exception {
+
+        run("clean", ScoveragePlugin.getCHECK_NAME(), "--configuration-cache");
+        AssertableBuildResult result = run("clean", ScoveragePlugin.getCHECK_NAME(), "--configuration-cache");
+
+        Assert.assertTrue(result.getResult().getOutput().contains("Reusing configuration cache."));
+        result.assertTaskSucceeded(ScoveragePlugin.getCOMPILE_NAME());
+        result.assertTaskSucceeded(ScoveragePlugin.getREPORT_NAME());
+        result.assertTaskSucceeded(ScoveragePlugin.getCHECK_NAME());
+
+        assertReportFilesExist();
+        assertCoverage(50.0);
+    }
+
     @Test
     public void checkScoverageFails() throws Exception {
 
@@ -87,6 +119,32 @@ public class ScalaSingleModuleTest extends ScoverageFunctionalTest {
         assertCoverage(0.0);
     }
 
+    @Test
+    public void checkScoverageWithoutReports() throws Exception {
+
+        AssertableBuildResult result = run("clean", ScoveragePlugin.getCHECK_NAME(), "-PcheckWithoutReports");
+
+        result.assertTaskSucceeded(ScoveragePlugin.getCOMPILE_NAME());
+        result.assertTaskSucceeded(ScoveragePlugin.getCHECK_NAME());
+        result.assertTaskDoesntExist(ScoveragePlugin.getREPORT_NAME());
+        result.assertTaskDoesntExist(ScoveragePlugin.getAGGREGATE_NAME());
+
+        Assert.assertFalse(resolve(reportDir(), "index.html").exists());
+    }
+
+    @Test
+    public void checkScoverageWithoutReportsFails() throws Exception {
+
+        AssertableBuildResult result = runAndFail("clean", ScoveragePlugin.getCHECK_NAME(), "-PcheckWithoutReports",
+                "test", "--tests", "org.hello.TestNothingSuite");
+
+        result.assertTaskSucceeded(ScoveragePlugin.getCOMPILE_NAME());
+        result.assertTaskFailed(ScoveragePlugin.getCHECK_NAME());
+        result.assertTaskDoesntExist(ScoveragePlugin.getREPORT_NAME());
+
+        Assert.assertFalse(resolve(reportDir(), "index.html").exists());
+    }
+
     @Test
     public void reportScoverageWithExcludedClasses() throws Exception {
 
@@ -107,6 +165,154 @@ public class ScalaSingleModuleTest extends ScoverageFunctionalTest {
         Assert.assertFalse(resolve(buildDir(), "classes/scala/scoverage/org/hello/World.class").exists());
     }
 
+    @Test
+    public void reportScoverageInSeparateProcess() throws Exception {
+
+        AssertableBuildResult result = run("clean", ScoveragePlugin.getREPORT_NAME(),
+                "-PreportMaxHeapSize=256m");
+
+        result.assertTaskSucceeded(ScoveragePlugin.getCOMPILE_NAME());
+        result.assertTaskSucceeded(ScoveragePlugin.getREPORT_NAME());
+
+        assertReportFilesExist();
+        assertCoverage(50.0);
+    }
+
+    @Test
+    public void reportScoverageWritesMetrics() throws Exception {
+
+        AssertableBuildResult result = run("clean", ScoveragePlugin.getCHECK_NAME(),
+                "-P" + ScoverageMetricsService.getSUMMARY_PROPERTY() + "=true");
+
+        result.assertTaskSucceeded(ScoveragePlugin.getCHECK_NAME());
+
+        File metricsDir = resolve(buildDir(), "reports/scoverage-metrics");
+        Assert.assertTrue(resolve(metricsDir, ScoveragePlugin.getPRUNE_NAME() + ".json").exists());
+        Assert.assertTrue(resolve(metricsDir, ScoveragePlugin.getREPORT_NAME() + ".json").exists());
+        Assert.assertTrue(resolve(metricsDir, ScoveragePlugin.getCHECK_NAME() + ".json").exists());
+        Assert.assertTrue(result.getResult().getOutput().contains("[scoverage] Metrics summary:"));
+        Assert.assertTrue(result.getResult().getOutput().contains(":" + ScoveragePlugin.getREPORT_NAME() + " aggregate:"));
+    }
+
+    @Test
+    public void reportScoverageCachesTheStatements() throws Exception {
+
+        run("clean", ScoveragePlugin.getREPORT_NAME());
+
+        // the cache is kept by the report, rather than in the data directory written by the compilation
+        File[] cacheFiles = resolve(buildDir(), "tmp/" + ScoveragePlugin.getREPORT_NAME() + "/coverage-cache").listFiles();
+        Assert.assertNotNull(cacheFiles);
+        Assert.assertTrue(cacheFiles.length > 0);
+        Assert.assertTrue(Arrays.stream(cacheFiles).allMatch(file -> file.getName().endsWith(".coverage.cache")));
+        Assert.assertFalse(resolve(buildDir(), "scoverage/scoverage.coverage.cache").exists());
+
+        AssertableBuildResult result = run(ScoveragePlugin.getREPORT_NAME());
+        result.assertTaskOutcome(ScoveragePlugin.getREPORT_NAME(), TaskOutcome.UP_TO_DATE);
+    }
+
+    @Test
+    public void reportScoverageWithIncrementalHtmlReport() throws Exception {
+
+        run("clean", ScoveragePlugin.getREPORT_NAME(), "-PincrementalHtmlReport");
+
+        File page = resolve(reportDir(), "org/hello/World.scala.html");
+        Assert.assertTrue(page.setLastModified(1000));
+
+        // the coverage does not change, so neither do the pages
+        AssertableBuildResult result = run(ScoveragePlugin.getREPORT_NAME(), "-PincrementalHtmlReport", "--rerun-tasks");
+
+        result.assertTaskSucceeded(ScoveragePlugin.getREPORT_NAME());
+        assertReportFilesExist();
+        assertCoverage(50.0);
+        Assert.assertEquals(1000, page.lastModified());
+    }
+
+    @Test
+    public void reportScoverageWithIncrementalHtmlReportOfRemovedSources() throws Exception {
+
+        File removed = resolve(projectDir(), "src/main/scala/org/removed/Removed.scala");
+        try {
+            Files.createDirectories(removed.getParentFile().toPath());
+            Files.write(removed.toPath(), "package org.removed\n\nobject Removed {\n  def baz(): String = \"z\"\n}\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            run("clean", ScoveragePlugin.getREPORT_NAME(), "-PincrementalHtmlReport");
+
+            Assert.assertTrue(resolve(reportDir(), "org/removed/Removed.scala.html").exists());
+            Assert.assertTrue(resolve(reportDir(), "org.removed.html").exists());
+
+            Files.delete(removed.toPath());
+            AssertableBuildResult result = run(ScoveragePlugin.getREPORT_NAME(), "-PincrementalHtmlReport");
+
+            // the pages of the removed source and of its package are deleted with it
+            result.assertTaskSucceeded(ScoveragePlugin.getREPORT_NAME());
+            assertReportFilesExist();
+            assertCoverage(50.0);
+            Assert.assertFalse(resolve(reportDir(), "org/removed/Removed.scala.html").exists());
+            Assert.assertFalse(resolve(reportDir(), "org/removed").exists());
+            Assert.assertFalse(resolve(reportDir(), "org.removed.html").exists());
+        } finally {
+            Files.deleteIfExists(removed.toPath());
+            Files.deleteIfExists(removed.getParentFile().toPath());
+        }
+    }
+
+    @Test
+    public void reportScoverageWithIncrementalCompilation() throws Exception {
+
+        File added = resolve(projectDir(), "src/main/scala/org/hello/Added.scala");
+        try {
+            run("clean", ScoveragePlugin.getREPORT_NAME(), "-PincrementalCompile");
+
+            Files.write(added.toPath(), "package org.hello\n\nobject Added {\n  def baz(): String = \"z\"\n}\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            AssertableBuildResult result = run(ScoveragePlugin.getREPORT_NAME(), "-PincrementalCompile");
+
+            result.assertTaskSucceeded(ScoveragePlugin.getCOMPILE_NAME());
+            result.assertTaskSucceeded(ScoveragePlugin.getREPORT_NAME());
+
+            // the statements of the sources which were not recompiled are kept
+            assertReportFilesExist();
+            Assert.assertTrue(resolve(reportDir(), "org/hello/Added.scala.html").exists());
+            File metrics = resolve(buildDir(), "reports/scoverage-metrics/" + ScoveragePlugin.getCOMPILE_NAME() + ".json");
+            Assert.assertTrue(new String(Files.readAllBytes(metrics.toPath()), StandardCharsets.UTF_8)
+                    .contains("\"name\": \"merge\""));
+        } finally {
+            Files.deleteIfExists(added.toPath());
+        }
+    }
+
+    @Test
+    public void reportScoverageWithIncrementalCompilationOfEditedSources() throws Exception {
+
+        File edited = resolve(projectDir(), "src/main/scala/org/hello/Edited.scala");
+        File world = resolve(projectDir(), "src/main/scala/org/hello/World.scala");
+        byte[] worldSource = Files.readAllBytes(world.toPath());
+        try {
+            Files.write(edited.toPath(), "package org.hello\n\nobject Edited {\n  def baz(): String = \"z\"\n}\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            run("clean", ScoveragePlugin.getREPORT_NAME(), "-PincrementalCompile");
+            Double coverage = coverage(reportDir(), CoverageType.Statement);
+
+            Files.write(edited.toPath(), "package org.hello\n\nobject Edited {\n  def baz(): String = \"zz\"\n}\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            run(ScoveragePlugin.getREPORT_NAME(), "-PincrementalCompile");
+            assertCoverage(coverage);
+
+            // the classes of Edited, whose ids were shifted by the previous build, are not compiled again
+            Files.write(world.toPath(), new String(worldSource, StandardCharsets.UTF_8).replace("\"y\"", "\"yy\"")
+                    .getBytes(StandardCharsets.UTF_8));
+            AssertableBuildResult result = run(ScoveragePlugin.getREPORT_NAME(), "-PincrementalCompile", "--info");
+
+            result.assertTaskSucceeded(ScoveragePlugin.getCOMPILE_NAME());
+            Assert.assertTrue(result.getResult().getOutput().contains("of 1 recompiled classes"));
+            assertReportFilesExist();
+            assertCoverage(coverage);
+        } finally {
+            Files.deleteIfExists(edited.toPath());
+            Files.write(world.toPath(), worldSource);
+        }
+    }
+
     @Test
     @Ignore
     public void reportScoverageWithoutNormalCompilation() throws Exception {
@@ -4,6 +4,8 @@ import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.File;
+
 public class ScalaSingleModuleWithMultipleTestTasksTest extends ScoverageFunctionalTest {
     public ScalaSingleModuleWithMultipleTestTasksTest() {
         super("scala-single-module-multiple-test-tasks");
@@ -67,6 +69,53 @@ public class ScalaSingleModuleWithMultipleTestTasksTest extends ScoverageFunctio
         assertCoverage(100.0);
     }
 
+    @Test
+    public void reportScoverageOfEachTestTask() throws Exception {
+
+        AssertableBuildResult result = run("clean", ScoveragePlugin.getREPORT_NAME());
+
+        result.assertTaskSucceeded("reportTestScoverage");
+        result.assertTaskSucceeded("reportIntTestScoverage");
+        result.assertTaskSucceeded(ScoveragePlugin.getREPORT_NAME());
+
+        // each test task covers a different method
+        File dataDir = resolve(buildDir(), "scoverage");
+        Assert.assertTrue(resolve(dataDir, "test/scoverage.coverage").exists());
+        Assert.assertTrue(resolve(dataDir, "intTest/scoverage.coverage").exists());
+        assertCoverage(50.0, resolve(buildDir(), "reports/scoverageTest"));
+        assertCoverage(50.0, resolve(buildDir(), "reports/scoverageIntTest"));
+        assertCoverage(100.0);
+    }
+
+    @Test
+    public void reportScoverageLeavesOutTheMeasurementsOfAPreviousCompilation() throws Exception {
+
+        run("clean", ScoveragePlugin.getREPORT_NAME());
+
+        // the instrumented classes are compiled again, while the unit tests are not run again
+        AssertableBuildResult result = run(ScoveragePlugin.getCOMPILE_NAME(), "--rerun",
+                ScoveragePlugin.getREPORT_NAME(), "-x", "reportTestScoverage");
+
+        result.assertTaskSucceeded(ScoveragePlugin.getCOMPILE_NAME());
+        result.assertTaskDoesntExist("test");
+        result.assertTaskSucceeded("intTest");
+        result.assertTaskSucceeded(ScoveragePlugin.getREPORT_NAME());
+
+        File dataDir = resolve(buildDir(), "scoverage");
+        Assert.assertFalse(resolve(dataDir, "test").exists());
+        Assert.assertTrue(resolve(dataDir, "intTest/scoverage.invoked").exists());
+        assertCoverage(50.0);
+    }
+
+    @Test
+    public void eachTestTaskRunsWithItsOwnClasses() {
+
+        AssertableBuildResult result = dryRun("clean", ScoveragePlugin.getREPORT_NAME());
+
+        result.assertTaskExists("testScoverageClasses");
+        result.assertTaskExists("intTestScoverageClasses");
+    }
+
     @Test
     public void checkScoverageIntTest() throws Exception {
         AssertableBuildResult result = runAndFail("clean", "-x", "reportTestScoverage", ScoveragePlugin.getCHECK_NAME());
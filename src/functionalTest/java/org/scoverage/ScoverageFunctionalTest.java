@@ -106,7 +106,7 @@ public abstract class ScoverageFunctionalTest {
         return file.toPath().resolve(relativePath).toFile();
     }
 
-    private Double coverage(File reportDir, CoverageType coverageType) throws IOException, SAXException, NumberFormatException {
+    protected Double coverage(File reportDir, CoverageType coverageType) throws IOException, SAXException, NumberFormatException {
 
         File reportFile = reportDir.toPath().resolve(coverageType.getFileName()).toFile();
         Node xml = parser.parse(reportFile);
@@ -0,0 +1,8 @@
+package org.hello
+
+class World {
+
+  def foo(): String = {
+    "a" + "b"
+  }
+}
\ No newline at end of file
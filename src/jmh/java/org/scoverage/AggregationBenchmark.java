@@ -0,0 +1,100 @@
+package org.scoverage;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import scoverage.domain.Coverage;
+import scoverage.serialize.Serializer;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregating the given number of statements, spread over the given number of data directories, with the given
+ * number of data directories read concurrently.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AggregationBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int statements;
+
+    @Param({"1", "10", "100"})
+    public int dataDirs;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private File workDir;
+    private File sourceRoot;
+    private File cacheDir;
+    private List<File> dirs;
+    private CoverageSnapshots snapshots;
+
+    @Setup
+    public void setUp() throws Exception {
+
+        workDir = Files.createTempDirectory("scoverage-jmh").toFile();
+        CoverageDataGenerator generator = new CoverageDataGenerator(new File(workDir, "project"));
+        sourceRoot = generator.getSourceRoot();
+        cacheDir = new File(workDir, "cache");
+
+        int statementsPerDir = statements / dataDirs;
+        dirs = new ArrayList<>();
+        for (int i = 0; i < dataDirs; i++) {
+            File dataDir = new File(workDir, "data/module" + i);
+            generator.writeDataDir(dataDir, statementsPerDir, i * CoverageDataGenerator.files(statementsPerDir));
+            dirs.add(dataDir);
+        }
+
+        // the snapshots (and the cached statements) are created by the first (warmup) invocation, and then reused;
+        // a single data directory is read directly
+        snapshots = new CoverageSnapshots(new File(workDir, "snapshots"), sourceRoot, parallelism, cacheDir);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+
+        FileUtils.deleteDirectory(workDir);
+    }
+
+    @Benchmark
+    public Coverage aggregate() {
+
+        return CoverageData.aggregate(dirs, sourceRoot, parallelism, cacheDir, null).get();
+    }
+
+    @Benchmark
+    public int loadStatements() {
+
+        int statementCount = 0;
+        for (File dir : dirs) {
+            statementCount += CoverageCache.load(Serializer.coverageFile(dir), sourceRoot, cacheDir).statementCount();
+        }
+        return statementCount;
+    }
+
+    @Benchmark
+    public Coverage aggregateFromSnapshots() {
+
+        return snapshots.aggregate(dirs, null).get();
+    }
+}
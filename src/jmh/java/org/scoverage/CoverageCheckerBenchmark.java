@@ -0,0 +1,72 @@
+package org.scoverage;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.logging.Logging;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checking the coverage of a report of the given number of statements.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CoverageCheckerBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int statements;
+
+    @Param({"Line", "Statement", "Branch"})
+    public String coverageType;
+
+    private File workDir;
+    private File reportDir;
+    private CoverageType type;
+    private CoverageChecker checker;
+
+    @Setup
+    public void setUp() throws Exception {
+
+        workDir = Files.createTempDirectory("scoverage-jmh").toFile();
+        reportDir = new File(workDir, "report");
+
+        CoverageDataGenerator generator = new CoverageDataGenerator(new File(workDir, "project"));
+        new ScoverageWriter(Logging.getLogger(CoverageCheckerBenchmark.class),
+                Runtime.getRuntime().availableProcessors(), new ScoverageMetrics(""), false, null).write(
+                Collections.singleton(generator.getSourceDir()), reportDir, generator.coverage(statements, 0), "UTF-8",
+                true, true, false, false);
+
+        type = CoverageType.valueOf(coverageType);
+        checker = new CoverageChecker(Logging.getLogger(CoverageCheckerBenchmark.class));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+
+        FileUtils.deleteDirectory(workDir);
+    }
+
+    @Benchmark
+    public void checkLineCoverage() {
+
+        checker.checkLineCoverage(reportDir, type, 0.0);
+    }
+}
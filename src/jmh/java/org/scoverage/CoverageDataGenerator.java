@@ -0,0 +1,136 @@
+package org.scoverage;
+
+import scoverage.domain.ClassType$;
+import scoverage.domain.Coverage;
+import scoverage.domain.Location;
+import scoverage.domain.Statement;
+import scoverage.serialize.Serializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Generates synthetic coverage data for the benchmarks: scala sources, the statements measured in them
+ * (as written by the scalac plugin) and measurement files (as written by the scoverage runtime).
+ * Every other statement is invoked and every tenth statement is a branch.
+ */
+final class CoverageDataGenerator {
+
+    static final int STATEMENTS_PER_FILE = 100;
+    static final int FILES_PER_PACKAGE = 50;
+
+    private final File sourceRoot;
+    private final File sourceDir;
+
+    /**
+     * @param sourceRoot root of the generated project; sources are generated under src/main/scala
+     */
+    CoverageDataGenerator(File sourceRoot) {
+
+        this.sourceRoot = sourceRoot;
+        this.sourceDir = new File(sourceRoot, "src/main/scala");
+    }
+
+    File getSourceRoot() {
+
+        return sourceRoot;
+    }
+
+    File getSourceDir() {
+
+        return sourceDir;
+    }
+
+    /**
+     * Coverage of the given number of statements, with the invocation counts already applied.
+     *
+     * @param statements number of statements
+     * @param firstFile  index of the first generated source file, so that several modules do not share files
+     */
+    Coverage coverage(int statements, int firstFile) throws IOException {
+
+        return coverage(statements, firstFile, true);
+    }
+
+    /**
+     * Writes a data directory with the given number of statements, as left by an instrumented compilation
+     * followed by a test run.
+     */
+    void writeDataDir(File dataDir, int statements, int firstFile) throws IOException {
+
+        dataDir.mkdirs();
+        Serializer.serialize(coverage(statements, firstFile, false), Serializer.coverageFile(dataDir), sourceRoot);
+
+        try (Writer writer = Files.newBufferedWriter(new File(dataDir, "scoverage.measurements.1").toPath(), StandardCharsets.UTF_8)) {
+            for (int id = 1; id <= statements; id++) {
+                if (isInvoked(id)) {
+                    writer.write(Integer.toString(id));
+                    writer.write('\n');
+                }
+            }
+        }
+    }
+
+    /** Number of source files holding the given number of statements */
+    static int files(int statements) {
+
+        return (statements + STATEMENTS_PER_FILE - 1) / STATEMENTS_PER_FILE;
+    }
+
+    private Coverage coverage(int statements, int firstFile, boolean withCounts) throws IOException {
+
+        Coverage coverage = new Coverage();
+        int id = 1;
+        for (int file = firstFile; id <= statements; file++) {
+            String packageName = "pkg" + (file / FILES_PER_PACKAGE);
+            String className = "File" + file;
+            File source = writeSource(packageName, className);
+
+            int offset = header(packageName, className).length();
+            for (int line = 0; line < STATEMENTS_PER_FILE && id <= statements; line++, id++) {
+                String code = line(line);
+                Location location = new Location(packageName, className, packageName + "." + className,
+                        ClassType$.MODULE$.fromString("Class"), "m" + line, source.getAbsolutePath());
+                coverage.add(new Statement(location, id, offset + 2, offset + code.length() - 1, line + 3,
+                        code.trim(), "scala.Int", "Literal", id % 10 == 0,
+                        withCounts && isInvoked(id) ? 1 : 0, false, new scala.collection.mutable.HashSet<>()));
+                offset += code.length();
+            }
+        }
+        return coverage;
+    }
+
+    private File writeSource(String packageName, String className) throws IOException {
+
+        File source = new File(sourceDir, packageName + "/" + className + ".scala");
+        if (!source.exists()) {
+            source.getParentFile().mkdirs();
+            StringBuilder content = new StringBuilder(header(packageName, className));
+            for (int line = 0; line < STATEMENTS_PER_FILE; line++) {
+                content.append(line(line));
+            }
+            content.append("}\n");
+            Files.write(source.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return source;
+    }
+
+    private static String header(String packageName, String className) {
+
+        return "package " + packageName + "\n" +
+                "class " + className + " {\n";
+    }
+
+    private static String line(int line) {
+
+        return "  def m" + line + ": Int = " + line + "\n";
+    }
+
+    private static boolean isInvoked(int id) {
+
+        return id % 2 == 0;
+    }
+}
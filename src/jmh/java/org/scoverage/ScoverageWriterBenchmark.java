@@ -0,0 +1,73 @@
+package org.scoverage;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.logging.Logging;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import scoverage.domain.Coverage;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a single report format of the given number of statements.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScoverageWriterBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int statements;
+
+    @Param({"cobertura", "xml", "html"})
+    public String format;
+
+    private File workDir;
+    private File reportDir;
+    private Set<File> sourceDirs;
+    private Coverage coverage;
+    private ScoverageWriter writer;
+
+    @Setup
+    public void setUp() throws Exception {
+
+        workDir = Files.createTempDirectory("scoverage-jmh").toFile();
+        reportDir = new File(workDir, "report");
+
+        CoverageDataGenerator generator = new CoverageDataGenerator(new File(workDir, "project"));
+        coverage = generator.coverage(statements, 0);
+        sourceDirs = Collections.singleton(generator.getSourceDir());
+        writer = new ScoverageWriter(Logging.getLogger(ScoverageWriterBenchmark.class),
+                Runtime.getRuntime().availableProcessors(), new ScoverageMetrics(""), false, null);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+
+        FileUtils.deleteDirectory(workDir);
+    }
+
+    @Benchmark
+    public void write() throws Exception {
+
+        writer.write(sourceDirs, reportDir, coverage, "UTF-8",
+                format.equals("cobertura"), format.equals("xml"), format.equals("html"), false);
+    }
+}
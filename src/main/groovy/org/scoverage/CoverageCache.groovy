@@ -0,0 +1,302 @@
+package org.scoverage
+
+import groovy.transform.CompileStatic
+import org.gradle.api.logging.Logger
+import org.gradle.api.logging.Logging
+import scoverage.domain.ClassType$
+import scoverage.domain.Coverage
+import scoverage.domain.Location
+import scoverage.domain.Statement
+import scoverage.serialize.Serializer
+
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.security.MessageDigest
+
+/**
+ * Binary cache of the statements of coverage files, kept in a directory of the task reading them (as the coverage
+ * files are the outputs of other tasks), with one cache file per coverage file named after its path.
+ *
+ * Parsing the coverage file written by the compiler plugin dominates the aggregation of large modules, while the
+ * file seldom changes between two reports. The statements parsed from it are thus cached in a compact binary form,
+ * under a hash of the content of the file and of the source root its paths are resolved against, and are decoded
+ * from the cache for as long as the hash does not change. All the statements are still created when the cache is
+ * loaded; what is saved is the parsing of the text. The same format keeps the {@link CoverageSnapshots snapshots} of
+ * data directories, whose statements carry their invocations, so the names of the tests invoking a statement are
+ * kept as well. The source paths are kept relative to the source root, and resolved against it when read:
+ * <pre>
+ * int      magic number
+ * int      format version
+ * byte[32] the hash
+ * varint   number of strings, then each string (varint length and UTF-8 bytes)
+ * varint   number of locations, then each location (package, class, full class name, class type, method
+ *          and source path, as indices in the strings)
+ * varint   number of statements, then each statement
+ * varint   number of ignored statements, then each statement
+ * </pre>
+ * A statement is its location (index), id, start, end, line, description, symbol name, tree name (indices in the
+ * strings), count, and number of tests followed by their names (indices in the strings) as varints, followed by a
+ * byte holding its branch and ignored flags. The string index 0 stands for a missing string.
+ */
+class CoverageCache {
+
+    static final String CACHE_SUFFIX = '.coverage.cache'
+
+    private static final Logger LOGGER = Logging.getLogger(CoverageCache)
+
+    private static final int MAGIC = 0x53434f43
+    private static final int VERSION = 2
+
+    private static final int BRANCH = 1
+    private static final int IGNORED = 2
+
+    /**
+     * @param cacheDir where the statements are cached, or null to parse them every time
+     * @return the statements of the coverage file, from the cache when it is up-to-date
+     */
+    static Coverage load(File coverageFile, File sourceRoot, File cacheDir) {
+        if (cacheDir == null) {
+            return Serializer.deserialize(coverageFile, sourceRoot)
+        }
+        def cacheFile = cacheFile(coverageFile, cacheDir)
+        def key = key(coverageFile, sourceRoot)
+
+        def coverage = read(cacheFile, key, sourceRoot)
+        if (coverage != null) {
+            LOGGER.info("[scoverage] Reading cached statements of {}", coverageFile)
+            return coverage
+        }
+
+        coverage = Serializer.deserialize(coverageFile, sourceRoot)
+        try {
+            write(coverage, cacheFile, key, sourceRoot)
+        } catch (IOException e) {
+            LOGGER.info("[scoverage] Could not cache the statements of {}: {}", coverageFile, e.toString())
+        }
+        coverage
+    }
+
+    /** @return the cache of the given coverage file in the cache directory */
+    static File cacheFile(File coverageFile, File cacheDir) {
+        def digest = MessageDigest.getInstance('SHA-256')
+        def hash = digest.digest(coverageFile.absolutePath.getBytes(StandardCharsets.UTF_8)).encodeHex().toString()
+        new File(cacheDir, hash + CACHE_SUFFIX)
+    }
+
+    /** Hash of the source root and of the content of the coverage file */
+    static byte[] key(File coverageFile, File sourceRoot) {
+        def digest = MessageDigest.getInstance('SHA-256')
+        digest.update(sourceRoot.absolutePath.getBytes(StandardCharsets.UTF_8))
+        def buffer = new byte[65536]
+        coverageFile.withInputStream { stream ->
+            int read
+            while ((read = stream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read)
+            }
+        }
+        digest.digest()
+    }
+
+    /**
+     * @return the statements kept in the given file under the given key, with their source paths resolved against
+     * the source root, or null when the file does not exist, is kept under another key or cannot be read
+     */
+    static Coverage read(File cacheFile, byte[] key, File sourceRoot) {
+        if (!cacheFile.isFile()) {
+            return null
+        }
+        try {
+            decode(cacheFile, key, sourceRoot.absoluteFile.toPath())
+        } catch (IOException | RuntimeException e) {
+            LOGGER.info("[scoverage] Ignoring unreadable cache {}: {}", cacheFile, e.toString())
+            null
+        }
+    }
+
+    /**
+     * Keeps the statements in the given file under the given key, with their source paths relative to the source
+     * root. The file is replaced at once, so that it is never read partially written.
+     */
+    static void write(Coverage coverage, File cacheFile, byte[] key, File sourceRoot) {
+        def root = sourceRoot.absoluteFile.toPath()
+        Map<String, Integer> strings = new LinkedHashMap<>()
+        Map<List<Integer>, Integer> locations = new LinkedHashMap<>()
+        def encodedStatements = encode(coverage.statements(), root, strings, locations)
+        def encodedIgnoredStatements = encode(coverage.ignoredStatements(), root, strings, locations)
+
+        cacheFile.parentFile.mkdirs()
+        def tempFile = Files.createTempFile(cacheFile.parentFile.toPath(), cacheFile.name, '.tmp')
+        try {
+            new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile))).withCloseable { output ->
+                output.writeInt(MAGIC)
+                output.writeInt(VERSION)
+                output.write(key)
+
+                writeVarInt(output, strings.size())
+                strings.keySet().each { string ->
+                    def bytes = string.getBytes(StandardCharsets.UTF_8)
+                    writeVarInt(output, bytes.length)
+                    output.write(bytes)
+                }
+
+                writeVarInt(output, locations.size())
+                locations.keySet().each { location -> location.each { writeVarInt(output, it) } }
+
+                encodedStatements.writeTo(output)
+                encodedIgnoredStatements.writeTo(output)
+            }
+            Files.move(tempFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING)
+        } finally {
+            Files.deleteIfExists(tempFile)
+        }
+    }
+
+    private static Coverage decode(File cacheFile, byte[] key, Path sourceRoot) {
+        FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ).withCloseable { channel ->
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null
+            }
+            def cachedKey = new byte[key.length]
+            buffer.get(cachedKey)
+            if (!Arrays.equals(key, cachedKey)) {
+                return null
+            }
+
+            def strings = readStrings(buffer)
+            def locations = new Location[readVarInt(buffer)]
+            for (int i = 0; i < locations.length; i++) {
+                locations[i] = new Location(strings[readVarInt(buffer)], strings[readVarInt(buffer)],
+                        strings[readVarInt(buffer)], ClassType$.MODULE$.fromString(strings[readVarInt(buffer)]),
+                        strings[readVarInt(buffer)], sourcePath(sourceRoot, strings[readVarInt(buffer)]))
+            }
+
+            def coverage = new Coverage()
+            int statements = readVarInt(buffer)
+            for (int i = 0; i < statements; i++) {
+                coverage.add(readStatement(buffer, strings, locations))
+            }
+            int ignoredStatements = readVarInt(buffer)
+            for (int i = 0; i < ignoredStatements; i++) {
+                coverage.addIgnoredStatement(readStatement(buffer, strings, locations))
+            }
+            coverage
+        }
+    }
+
+    private static Statement readStatement(ByteBuffer buffer, String[] strings, Location[] locations) {
+        def location = locations[readVarInt(buffer)]
+        int id = readVarInt(buffer)
+        int start = readVarInt(buffer)
+        int end = readVarInt(buffer)
+        int line = readVarInt(buffer)
+        def desc = strings[readVarInt(buffer)]
+        def symbolName = strings[readVarInt(buffer)]
+        def treeName = strings[readVarInt(buffer)]
+        int count = readVarInt(buffer)
+        def tests = new scala.collection.mutable.HashSet<String>()
+        int testCount = readVarInt(buffer)
+        for (int i = 0; i < testCount; i++) {
+            tests.add(strings[readVarInt(buffer)])
+        }
+        int flags = buffer.get()
+        new Statement(location, id, start, end, line, desc, symbolName, treeName, (flags & BRANCH) != 0, count,
+                (flags & IGNORED) != 0, tests)
+    }
+
+    private static ByteArrayOutputStream encode(def statements, Path sourceRoot, Map<String, Integer> strings,
+                                                Map<List<Integer>, Integer> locations) {
+        def bytes = new ByteArrayOutputStream()
+        def output = new DataOutputStream(bytes)
+        writeVarInt(output, statements.size())
+
+        def iterator = statements.iterator()
+        while (iterator.hasNext()) {
+            Statement statement = iterator.next()
+            def location = statement.location()
+            List<Integer> locationKey = [
+                    index(strings, location.packageName()),
+                    index(strings, location.className()),
+                    index(strings, location.fullClassName()),
+                    index(strings, location.classType().toString()),
+                    index(strings, location.method()),
+                    index(strings, relativeSourcePath(sourceRoot, location.sourcePath()))]
+            writeVarInt(output, locations.computeIfAbsent(locationKey) { locations.size() })
+            writeVarInt(output, statement.id())
+            writeVarInt(output, statement.start())
+            writeVarInt(output, statement.end())
+            writeVarInt(output, statement.line())
+            writeVarInt(output, index(strings, statement.desc()))
+            writeVarInt(output, index(strings, statement.symbolName()))
+            writeVarInt(output, index(strings, statement.treeName()))
+            writeVarInt(output, statement.count())
+            def tests = statement.tests()
+            writeVarInt(output, tests.size())
+            def testIterator = tests.iterator()
+            while (testIterator.hasNext()) {
+                writeVarInt(output, index(strings, (String) testIterator.next()))
+            }
+            output.writeByte((statement.branch() ? BRANCH : 0) | (statement.ignored() ? IGNORED : 0))
+        }
+        output.flush()
+        bytes
+    }
+
+    @CompileStatic
+    private static String relativeSourcePath(Path sourceRoot, String sourcePath) {
+        def path = sourcePath == null ? null : Paths.get(sourcePath)
+        path?.startsWith(sourceRoot) ? sourceRoot.relativize(path).toString() : sourcePath
+    }
+
+    @CompileStatic
+    private static String sourcePath(Path sourceRoot, String path) {
+        path == null || Paths.get(path).isAbsolute() ? path : sourceRoot.resolve(path).toString()
+    }
+
+    @CompileStatic
+    private static int index(Map<String, Integer> strings, String string) {
+        string == null ? 0 : strings.computeIfAbsent(string) { strings.size() + 1 }
+    }
+
+    @CompileStatic
+    private static String[] readStrings(ByteBuffer buffer) {
+        def strings = new String[readVarInt(buffer) + 1]
+        def bytes = new byte[256]
+        for (int i = 1; i < strings.length; i++) {
+            int length = readVarInt(buffer)
+            if (bytes.length < length) {
+                bytes = new byte[length]
+            }
+            buffer.get(bytes, 0, length)
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8)
+        }
+        strings
+    }
+
+    @CompileStatic
+    private static void writeVarInt(DataOutputStream output, int value) {
+        while ((value & ~0x7f) != 0) {
+            output.writeByte((value & 0x7f) | 0x80)
+            value >>>= 7
+        }
+        output.writeByte(value)
+    }
+
+    @CompileStatic
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0
+        int shift = 0
+        int b
+        while (((b = buffer.get()) & 0x80) != 0) {
+            value |= (b & 0x7f) << shift
+            shift += 7
+        }
+        value | (b << shift)
+    }
+}
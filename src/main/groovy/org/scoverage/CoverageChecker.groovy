@@ -1,10 +1,13 @@
 package org.scoverage
 
-import groovy.xml.XmlParser
 import org.gradle.api.GradleException
 import org.gradle.api.logging.Logger
 import org.gradle.internal.impldep.com.google.common.annotations.VisibleForTesting
+import org.scoverage.ScoverageExtension.CheckConfig
 
+import javax.xml.stream.XMLInputFactory
+import javax.xml.stream.XMLStreamConstants
+import javax.xml.stream.XMLStreamReader
 import java.text.DecimalFormat
 import java.text.DecimalFormatSymbols
 
@@ -51,29 +54,89 @@ class CoverageChecker {
 
     final Logger logger
 
+    private final XMLInputFactory xmlInputFactory
+
     CoverageChecker(Logger logger) {
         this.logger = logger
+        this.xmlInputFactory = XMLInputFactory.newInstance()
+        // reports may declare a DTD (e.g. cobertura.xml); it is never needed for reading the overall rates
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false)
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false)
     }
 
     public void checkLineCoverage(File reportDir, CoverageType coverageType, double minimumRate) throws GradleException {
-        logger.info("Checking coverage. Type: {}. Minimum rate: {}", coverageType, minimumRate)
+        checkCoverage(reportDir, [new CheckConfig(coverageType: coverageType, minimumRate: BigDecimal.valueOf(minimumRate))])
+    }
+
+    /**
+     * Evaluates all the given checks against the reports in the given directory.
+     * Each report file is read once, however many checks use it.
+     */
+    void checkCoverage(File reportDir, Collection<CheckConfig> checks) throws GradleException {
+        Map<CoverageType, Double> rates = [:]
+
+        checks.collect { it.coverageType }.unique().groupBy { it.fileName }.each { fileName, types ->
+            try {
+                def values = readRootAttributes(new File(reportDir, fileName), types*.paramName)
+                types.each { type ->
+                    rates[type] = type.normalize(values[type.paramName].toDouble())
+                }
+            } catch (FileNotFoundException ignored) {
+                // the checks of these types fail in checkRates, as they have no rate
+            }
+        }
 
-        XmlParser parser = new XmlParser()
-        parser.setFeature('http://apache.org/xml/features/disallow-doctype-decl', false)
-        parser.setFeature('http://apache.org/xml/features/nonvalidating/load-external-dtd', false)
+        checkRates(rates, checks)
+    }
 
-        try {
-            File reportFile = new File(reportDir, coverageType.fileName)
-            Node xml = parser.parse(reportFile)
-            Double coverageValue = (xml.attribute(coverageType.paramName) as String).toDouble()
-            Double overallRate = coverageType.normalize(coverageValue)
-            def difference = (minimumRate - overallRate)
+    /**
+     * Evaluates all the given checks against the given (normalized) rates, and fails with all the violations at once.
+     * A check whose type has no rate fails as if its report file was missing.
+     */
+    void checkRates(Map<CoverageType, Double> rates, Collection<CheckConfig> checks) throws GradleException {
+        List<String> violations = []
+
+        checks.each { check ->
+            double minimumRate = check.minimumRate.doubleValue()
+            logger.info("Checking coverage. Type: {}. Minimum rate: {}", check.coverageType, minimumRate)
+
+            Double overallRate = rates[check.coverageType]
+            if (overallRate == null) {
+                violations << fileNotFoundErrorMsg(check.coverageType)
+            } else if (minimumRate - overallRate > 1e-7) {
+                violations << errorMsg(overallRate, minimumRate, check.coverageType)
+            }
+        }
+
+        if (violations) {
+            throw new GradleException(violations.join(System.lineSeparator()))
+        }
+    }
 
-            if (difference > 1e-7) {
-                throw new GradleException(errorMsg(overallRate, minimumRate, coverageType))
+    /**
+     * Reads attributes of the root element of the given report.
+     * The overall rates are attributes of the root element, so the (potentially huge) rest of the document
+     * is never read.
+     */
+    private Map<String, String> readRootAttributes(File reportFile, Collection<String> attributeNames) throws FileNotFoundException {
+        new FileInputStream(reportFile).withCloseable { stream ->
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(stream)
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                        return attributeNames.collectEntries { attributeName ->
+                            String value = reader.getAttributeValue(null, attributeName)
+                            if (value == null) {
+                                throw new GradleException("Coverage file $reportFile has no '$attributeName' attribute")
+                            }
+                            [(attributeName): value]
+                        }
+                    }
+                }
+                throw new GradleException("Coverage file $reportFile has no root element")
+            } finally {
+                reader.close()
             }
-        } catch (FileNotFoundException fnfe) {
-            throw new GradleException(fileNotFoundErrorMsg(coverageType), fnfe)
         }
     }
 
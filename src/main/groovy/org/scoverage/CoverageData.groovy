@@ -0,0 +1,171 @@
+package org.scoverage
+
+import scala.Option
+import scoverage.domain.Coverage
+import scoverage.domain.Statement
+import scoverage.serialize.Serializer
+
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinWorkerThread
+import java.util.concurrent.RecursiveTask
+import java.util.function.Function
+
+/**
+ * Reads and aggregates data directories the way {@code scoverage.reporter.CoverageAggregator} does, but with their
+ * measurements read through {@link MeasurementFiles}, i.e. either as written by the runtime or compacted.
+ *
+ * The data directories are aggregated by a tree reduction on a fork-join pool: each data directory is read on its
+ * own (directly, or e.g. from its {@link CoverageSnapshots snapshot}), and the coverage of the second half of the directories is merged into that of the first half. The reading
+ * and the merging are measured as parts of the given phase, as they run on the threads of the pool.
+ */
+class CoverageData {
+
+    /**
+     * @param parallelism maximum number of data directories read (or merged) concurrently
+     * @param cacheDir    where the statements of the coverage files are cached (see {@link CoverageCache}), if any
+     * @param phase       the phase the aggregation is measured as a part of, if any
+     */
+    static Option<Coverage> aggregate(List<File> dataDirs, File sourceRoot, int parallelism, File cacheDir,
+                                      ScoverageMetrics.Phase phase) {
+        aggregate(dataDirs, { File dataDir -> read(dataDir, sourceRoot, cacheDir) } as Function<File, Coverage>,
+                parallelism, phase)
+    }
+
+    /**
+     * @param reader      the coverage of a data directory with its measurements applied, or null if it has none
+     * @param parallelism maximum number of data directories read (or merged) concurrently
+     * @param phase       the phase the aggregation is measured as a part of, if any
+     */
+    static Option<Coverage> aggregate(List<File> dataDirs, Function<File, Coverage> reader, int parallelism,
+                                      ScoverageMetrics.Phase phase) {
+        if (dataDirs.empty) {
+            return Option.empty()
+        }
+
+        // the reporter is looked up through the classloader of the calling thread
+        def contextClassLoader = Thread.currentThread().contextClassLoader
+        def pool = new ForkJoinPool(Math.max(1, Math.min(parallelism, dataDirs.size())), { pool ->
+            def thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool)
+            thread.name = "scoverage-aggregation-${thread.poolIndex}"
+            thread.contextClassLoader = contextClassLoader
+            thread
+        } as ForkJoinPool.ForkJoinWorkerThreadFactory, null, false)
+        try {
+            def aggregated = pool.invoke(new Aggregation(dataDirs, reader, phase, 0, dataDirs.size()))
+            aggregated == null ? Option.empty() : Option.apply(aggregated.coverage)
+        } finally {
+            pool.shutdown()
+        }
+    }
+
+    /** @return the coverage of the data directory with its measurements applied, or null if it has none */
+    static Coverage read(File dataDir, File sourceRoot, File cacheDir) {
+        def coverageFile = Serializer.coverageFile(dataDir)
+        if (!coverageFile.exists()) {
+            return null
+        }
+
+        def coverage = CoverageCache.load(coverageFile, sourceRoot, cacheDir)
+        def invoked = MeasurementFiles.invoked(dataDir)
+        def statements = coverage.statements().iterator()
+        while (statements.hasNext()) {
+            Statement statement = statements.next()
+            // counted once per test, as the reporter does
+            invoked.get(statement.id())?.each { String test -> statement.invoked(test) }
+        }
+        coverage
+    }
+
+    /** @return the coverage with the highest id of its statements, or null if there is no coverage */
+    private static Data data(Coverage coverage) {
+        if (coverage == null) {
+            return null
+        }
+
+        int maxId = -1
+        def statements = coverage.statements().iterator()
+        while (statements.hasNext()) {
+            maxId = Math.max(maxId, statements.next().id())
+        }
+        def ignoredStatements = coverage.ignoredStatements().iterator()
+        while (ignoredStatements.hasNext()) {
+            maxId = Math.max(maxId, ignoredStatements.next().id())
+        }
+        new Data(coverage, maxId)
+    }
+
+    /**
+     * Merges the statements of the second coverage into the first one, after those of the first one, as the ids of
+     * different data directories overlap. The ids start at 1 with the scala 2 compiler plugin, but at 0 with the
+     * scala 3 compiler, so the ids of the second coverage are shifted past the highest id of the first one.
+     */
+    private static Data merge(Data first, Data second) {
+        if (first == null || second == null) {
+            return first ?: second
+        }
+
+        int offset = first.maxId + 1
+        def statements = second.coverage.statements().iterator()
+        while (statements.hasNext()) {
+            first.coverage.add(shift(statements.next(), offset))
+        }
+        def ignoredStatements = second.coverage.ignoredStatements().iterator()
+        while (ignoredStatements.hasNext()) {
+            first.coverage.addIgnoredStatement(shift(ignoredStatements.next(), offset))
+        }
+        new Data(first.coverage, offset + second.maxId)
+    }
+
+    private static Statement shift(Statement s, int offset) {
+        new Statement(s.location(), s.id() + offset, s.start(), s.end(), s.line(), s.desc(), s.symbolName(),
+                s.treeName(), s.branch(), s.count(), s.ignored(), s.tests())
+    }
+
+    /** A coverage, with the highest id of its statements */
+    private static class Data {
+        final Coverage coverage
+        final int maxId
+
+        Data(Coverage coverage, int maxId) {
+            this.coverage = coverage
+            this.maxId = maxId
+        }
+    }
+
+    /** The aggregation of the data directories in [from, to) */
+    private static class Aggregation extends RecursiveTask<Data> {
+        private final List<File> dataDirs
+        private final Function<File, Coverage> reader
+        private final ScoverageMetrics.Phase phase
+        private final int from
+        private final int to
+
+        Aggregation(List<File> dataDirs, Function<File, Coverage> reader, ScoverageMetrics.Phase phase, int from,
+                    int to) {
+            this.dataDirs = dataDirs
+            this.reader = reader
+            this.phase = phase
+            this.from = from
+            this.to = to
+        }
+
+        @Override
+        protected Data compute() {
+            if (to - from == 1) {
+                return measured { data(reader.apply(dataDirs[from])) }
+            }
+
+            int middle = (from + to) >>> 1
+            def first = new Aggregation(dataDirs, reader, phase, from, middle)
+            first.fork()
+            def second = new Aggregation(dataDirs, reader, phase, middle, to).compute()
+            // joining may run other tasks on this thread, which measure themselves
+            def firstData = first.join()
+            measured { merge(firstData, second) }
+        }
+
+        private Data measured(Closure<Data> work) {
+            phase == null ? work.call() : phase.onWorker(work)
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.scoverage
+
+import org.gradle.api.logging.Logger
+import org.gradle.api.logging.Logging
+import scala.Option
+import scoverage.domain.Coverage
+import scoverage.serialize.Serializer
+
+import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
+import java.util.function.Function
+
+/**
+ * Aggregates data directories through per data directory snapshots.
+ *
+ * A snapshot is the coverage of a single data directory with its measurements already applied (the invocation
+ * counts and the names of the invoking tests), kept in the format of the {@link CoverageCache} under a hash of the
+ * content of the data directory. Snapshots are named after the paths of their data directories relative to the
+ * source root, which their source paths are relative to as well, so that data directories with the same content
+ * each have their own snapshot, and that the snapshots still apply once the project has moved. Each data directory
+ * is read from its snapshot as it is aggregated, and only the data directories whose content has changed since the
+ * previous aggregation have their coverage and measurements read again. A single data directory is read directly,
+ * as its snapshot would only be read instead of it.
+ */
+class CoverageSnapshots {
+
+    static final String SNAPSHOT_SUFFIX = '.snapshot'
+
+    private static final Logger LOGGER = Logging.getLogger(CoverageSnapshots)
+
+    private final File snapshotDir
+    private final File sourceRoot
+    private final int parallelism
+    private final File cacheDir
+
+    /**
+     * @param parallelism maximum number of data directories snapshotted (and aggregated) concurrently
+     * @param cacheDir    where the statements of the coverage files are cached (see {@link CoverageCache}), if any
+     */
+    CoverageSnapshots(File snapshotDir, File sourceRoot, int parallelism, File cacheDir) {
+        this.snapshotDir = snapshotDir
+        this.sourceRoot = sourceRoot
+        this.parallelism = parallelism
+        this.cacheDir = cacheDir
+    }
+
+    /**
+     * @param phase the phase the aggregation, snapshots included, is measured as a part of, if any
+     */
+    Option<Coverage> aggregate(List<File> dataDirs, ScoverageMetrics.Phase phase) {
+        def dirs = dataDirs.findAll { Serializer.coverageFile(it).exists() }
+        if (dirs.size() <= 1) {
+            snapshotDir.deleteDir()
+            return CoverageData.aggregate(dirs, sourceRoot, parallelism, cacheDir, phase)
+        }
+
+        def coverage = CoverageData.aggregate(dirs, { File dataDir -> read(dataDir) } as Function<File, Coverage>,
+                parallelism, phase)
+
+        // snapshots of data directories that are no longer aggregated are never going to be read
+        def names = dirs.collect { snapshotFile(it).name } as Set
+        snapshotDir.listFiles()?.each { if (!names.contains(it.name)) it.directory ? it.deleteDir() : it.delete() }
+        coverage
+    }
+
+    private Coverage read(File dataDir) {
+        def snapshot = snapshotFile(dataDir)
+        def key = key(dataDir)
+        def coverage = CoverageCache.read(snapshot, key, sourceRoot)
+        if (coverage != null) {
+            LOGGER.info("[scoverage] Reusing snapshot of unchanged data in {}", dataDir)
+            return coverage
+        }
+
+        LOGGER.info("[scoverage] Creating snapshot of data in {}", dataDir)
+        coverage = CoverageData.read(dataDir, sourceRoot, cacheDir)
+        try {
+            CoverageCache.write(coverage, snapshot, key, sourceRoot)
+        } catch (IOException e) {
+            LOGGER.info("[scoverage] Could not snapshot the data in {}: {}", dataDir, e.toString())
+        }
+        coverage
+    }
+
+    /** @return the snapshot of the given data directory, named after its path relative to the source root */
+    private File snapshotFile(File dataDir) {
+        def path = sourceRoot.absoluteFile.toPath().relativize(dataDir.absoluteFile.toPath()).toString()
+        def hash = MessageDigest.getInstance('SHA-256').digest(path.getBytes(StandardCharsets.UTF_8))
+        new File(snapshotDir, hash.encodeHex().toString() + SNAPSHOT_SUFFIX)
+    }
+
+    /**
+     * Hash of the paths (relative to the given data directory) and content of its coverage and measurement files
+     */
+    private static byte[] key(File dataDir) {
+        def digest = MessageDigest.getInstance('SHA-256')
+        def buffer = new byte[65536]
+
+        def files = [Serializer.coverageFile(dataDir)] + MeasurementFiles.files(dataDir)
+
+        files.each { file ->
+            digest.update(dataDir.toPath().relativize(file.toPath()).toString().getBytes('UTF-8'))
+            file.withInputStream { stream ->
+                int read
+                while ((read = stream.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read)
+                }
+            }
+        }
+
+        digest.digest()
+    }
+}
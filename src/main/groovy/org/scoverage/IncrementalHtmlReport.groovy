@@ -0,0 +1,273 @@
+package org.scoverage
+
+import org.gradle.api.logging.Logger
+import scoverage.domain.Coverage
+import scoverage.reporter.ScoverageHtmlWriter
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.function.Function
+
+/**
+ * Writes the HTML report again only where the coverage changed since it was last written.
+ *
+ * The report directory keeps a manifest of a digest of each source file, of its content and of its statements with
+ * their invocations. The pages of the packages holding a changed (or removed) source file are written again, along
+ * with the summary pages of the whole coverage, to a staging directory; only the pages whose content differs from
+ * those in the report directory are then copied over, so that the unchanged pages are left untouched.
+ *
+ * The pages of the source files and packages which are no longer covered are deleted from the report directory.
+ *
+ * The whole report is written (to the staging directory) when there is no manifest, when it was written with other
+ * settings, or when the reporter cannot write the summary pages on their own.
+ */
+class IncrementalHtmlReport {
+
+    static final String MANIFEST_FILE = '.scoverage-html-manifest'
+
+    private static final int VERSION = 1
+    private static final List<String> SUMMARY_PAGES = ['packages.html', 'overview.html']
+
+    private final Logger logger
+    private final File reportDir
+    private final Set<File> sourceDirs
+    private final String settings
+    private final Function<File, ScoverageHtmlWriter> writers
+
+    /**
+     * @param logger         logger for progress
+     * @param reportDir      directory of the report
+     * @param sourceDirs     directories with project sources
+     * @param sourceEncoding the encoding of the source files
+     * @param writers        creates the writer of the whole report to the given directory
+     */
+    IncrementalHtmlReport(Logger logger, File reportDir, Set<File> sourceDirs, String sourceEncoding,
+                          Function<File, ScoverageHtmlWriter> writers) {
+        this.logger = logger
+        this.reportDir = reportDir
+        this.sourceDirs = sourceDirs
+        this.settings = ([VERSION, sourceEncoding] + sourceDirs.collect { it.absolutePath }.sort()).join('\t')
+        this.writers = writers
+    }
+
+    /**
+     * @return the number of pages written
+     */
+    int write(Coverage coverage) {
+        Map<String, SourceFile> sourceFiles = sourceFiles(coverage)
+        Map<String, SourceFile> previous = readManifest()
+
+        def stagingDir = Files.createTempDirectory(reportDir.toPath(), 'staging').toFile()
+        try {
+            if (previous == null) {
+                logger.info("[scoverage] Writing the whole HTML report")
+                writers.apply(stagingDir).write(coverage)
+            } else {
+                Set<String> packages = new HashSet<>()
+                sourceFiles.each { path, sourceFile ->
+                    if (previous[path]?.digest != sourceFile.digest) {
+                        packages.addAll(sourceFile.packages)
+                        packages.addAll(previous[path]?.packages ?: [])
+                    }
+                }
+                previous.each { path, sourceFile ->
+                    if (!sourceFiles.containsKey(path)) {
+                        packages.addAll(sourceFile.packages)
+                    }
+                }
+                if (packages.empty) {
+                    logger.info("[scoverage] HTML report is up-to-date")
+                    return 0
+                }
+                logger.info("[scoverage] Writing the HTML report of changed packages {}", packages.sort())
+                writePackages(coverage, packages, stagingDir)
+            }
+
+            int written = copyChanged(stagingDir)
+            if (previous != null) {
+                deleteRemoved(previous, sourceFiles)
+            }
+            writeManifest(sourceFiles)
+            written
+        } finally {
+            stagingDir.deleteDir()
+        }
+    }
+
+    private void writePackages(Coverage coverage, Set<String> packages, File stagingDir) {
+        def changed = new Coverage()
+        eachStatement(coverage.statements()) { statement ->
+            if (packages.contains(statement.location().packageName())) {
+                changed.add(statement)
+            }
+        }
+        eachStatement(coverage.ignoredStatements()) { statement ->
+            if (packages.contains(statement.location().packageName())) {
+                changed.addIgnoredStatement(statement)
+            }
+        }
+
+        def writer = writers.apply(stagingDir)
+        writer.write(changed)
+        try {
+            // the summaries of the changed packages, which cover all of them
+            new File(stagingDir, SUMMARY_PAGES[0]).setText(writer.packageList(coverage).toString(), 'UTF-8')
+            new File(stagingDir, SUMMARY_PAGES[1]).setText(writer.overview(coverage).toString(), 'UTF-8')
+        } catch (MissingMethodException e) {
+            logger.info("[scoverage] Writing the whole HTML report, as the summary pages cannot be written on their own")
+            stagingDir.listFiles().each { it.deleteDir() }
+            writer.write(coverage)
+        }
+    }
+
+    /**
+     * Copies the pages of the staging directory which differ from those of the report directory.
+     */
+    private int copyChanged(File stagingDir) {
+        int written = 0
+        stagingDir.eachFileRecurse { staged ->
+            if (staged.isFile()) {
+                def target = new File(reportDir, stagingDir.toPath().relativize(staged.toPath()).toString())
+                if (!target.isFile() || target.length() != staged.length() || target.bytes != staged.bytes) {
+                    target.parentFile.mkdirs()
+                    Files.move(staged.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING)
+                    written++
+                }
+            }
+        }
+        logger.info("[scoverage] Written {} HTML pages to {}", written, reportDir)
+        written
+    }
+
+    /**
+     * Deletes the pages of the source files and of the packages which were in the report, but are no longer covered.
+     */
+    private void deleteRemoved(Map<String, SourceFile> previous, Map<String, SourceFile> sourceFiles) {
+        Set<String> packages = new HashSet<>()
+        sourceFiles.values().each { packages.addAll(it.packages) }
+
+        List<File> pages = []
+        previous.each { path, sourceFile ->
+            if (!sourceFiles.containsKey(path)) {
+                def relativePath = relativeSource(path)
+                if (relativePath != null) {
+                    pages << new File(reportDir, relativePath + '.html')
+                }
+                sourceFile.packages.findAll { !packages.contains(it) }.each { packageName ->
+                    // as named by the reporter
+                    pages << new File(reportDir, packageName.replace('<empty>', '(empty)') + '.html')
+                }
+            }
+        }
+
+        def deleted = pages.unique().findAll { it.delete() }
+        deleted.each { page ->
+            // the directories of the packages which no longer have any page
+            def dir = page.parentFile
+            while (dir != reportDir && dir.list()?.length == 0 && dir.delete()) {
+                dir = dir.parentFile
+            }
+        }
+        if (!deleted.empty) {
+            logger.info("[scoverage] Deleted {} HTML pages of removed source files from {}", deleted.size(), reportDir)
+        }
+    }
+
+    /**
+     * @return the path of the source file relative to its source directory, as its page is named by the reporter,
+     * or null when it is in none of them
+     */
+    private String relativeSource(String path) {
+        def sourceDir = sourceDirs.collect { it.canonicalPath + File.separator }.find { path.startsWith(it) }
+        sourceDir == null ? null : path.substring(sourceDir.length())
+    }
+
+    /**
+     * @return the source files of the statements, by path
+     */
+    private static Map<String, SourceFile> sourceFiles(Coverage coverage) {
+        Map<String, List<Object>> statements = new HashMap<>()
+        def bySource = { statement ->
+            statements.computeIfAbsent(statement.location().sourcePath()) { new ArrayList<>() }.add(statement)
+        }
+        eachStatement(coverage.statements(), bySource)
+        eachStatement(coverage.ignoredStatements(), bySource)
+
+        Map<String, SourceFile> sourceFiles = new HashMap<>()
+        statements.each { path, List<Object> sourceStatements ->
+            def digest = MessageDigest.getInstance('SHA-256')
+            def source = new File(path)
+            if (source.isFile()) {
+                digest.update(source.bytes)
+            }
+
+            // ids are left out, as they change when other files are compiled
+            sourceStatements.sort { a, b -> a.start() <=> b.start() ?: a.end() <=> b.end() ?: a.id() <=> b.id() }
+            Set<String> packages = new TreeSet<>()
+            sourceStatements.each { statement ->
+                def location = statement.location()
+                packages << location.packageName()
+                def fields = [location.packageName(), location.className(), location.fullClassName(),
+                              location.classType(), location.method(), statement.start(), statement.end(),
+                              statement.line(), statement.desc(), statement.symbolName(), statement.treeName(),
+                              statement.branch(), statement.count(), statement.ignored()]
+                digest.update((fields.join('\u0000') + '\n').getBytes(StandardCharsets.UTF_8))
+            }
+            sourceFiles[path] = new SourceFile(digest.digest().encodeHex().toString(), packages)
+        }
+        sourceFiles
+    }
+
+    private static void eachStatement(def statements, Closure action) {
+        def iterator = statements.iterator()
+        while (iterator.hasNext()) {
+            action(iterator.next())
+        }
+    }
+
+    /**
+     * @return the source files the report was last written for, or null when it has to be written from scratch
+     */
+    private Map<String, SourceFile> readManifest() {
+        def manifest = new File(reportDir, MANIFEST_FILE)
+        if (!manifest.isFile()) {
+            return null
+        }
+
+        def lines = manifest.readLines('UTF-8')
+        if (lines.empty || lines[0] != settings) {
+            return null
+        }
+        Map<String, SourceFile> sourceFiles = new HashMap<>()
+        lines.drop(1).each { line ->
+            // <digest> <packages> <path>
+            def fields = line.split('\t', 3)
+            sourceFiles[fields[2]] = new SourceFile(fields[0], fields[1].split(',') as Set)
+        }
+        sourceFiles
+    }
+
+    private void writeManifest(Map<String, SourceFile> sourceFiles) {
+        def manifest = new File(reportDir, MANIFEST_FILE)
+        def tempFile = new File(reportDir, "${MANIFEST_FILE}.tmp")
+        tempFile.withWriter('UTF-8') { writer ->
+            writer << settings << '\n'
+            sourceFiles.sort().each { path, sourceFile ->
+                writer << sourceFile.digest << '\t' << sourceFile.packages.join(',') << '\t' << path << '\n'
+            }
+        }
+        Files.move(tempFile.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING)
+    }
+
+    private static class SourceFile {
+        final String digest
+        final Set<String> packages
+
+        SourceFile(String digest, Set<String> packages) {
+            this.digest = digest
+            this.packages = packages
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package org.scoverage;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.logging.Logger;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the coverage data consistent when the instrumented classes are compiled incrementally.
+ *
+ * Each run of the compiler numbers the statements it instruments from scratch, and only writes the statements of
+ * the sources it compiled. So after an incremental compilation the ids of the recompiled classes (and of their
+ * statements) are shifted past the ids of the statements which are kept, and the statements of the sources which
+ * were not recompiled are added back. The ids of the statements of the sources which were not recompiled never change.
+ * The ids of the replaced statements are thus left unused, and once the ids span more than twice the number of
+ * statements, everything is compiled again from scratch so that the ids are numbered again without gaps.
+ *
+ * The classes are snapshot before the compilation, so that the recompiled ones are known afterwards.
+ */
+public class IncrementalInstrumentation {
+
+    static final String COVERAGE_FILE = "scoverage.coverage";
+
+    /** the owners of the method called by the instrumented statements (by scoverage and by the scala 3 compiler) */
+    private static final Set<String> INVOKERS = new HashSet<>(Arrays.asList(
+            "scoverage/Invoker", "scoverage/Invoker$",
+            "scala/runtime/coverage/Invoker", "scala/runtime/coverage/Invoker$"));
+
+    /** how many times the number of statements the ids may span before they are numbered again from scratch */
+    static final int MAX_ID_SPREAD = 2;
+
+    private static final String EMPTY_PACKAGE = "<empty>";
+    private static final String RECORD_SEPARATOR = "\f";
+
+    private final Logger logger;
+    private final File coverageFile;
+    private final File classesDir;
+    private final File sourceRoot;
+    private final File previousCoverageFile;
+    private final File snapshotFile;
+
+    /**
+     * @param logger     logger for progress
+     * @param dataDir    directory the compiler writes the statements to
+     * @param classesDir directory of the instrumented classes
+     * @param sourceRoot root the source paths of the statements are relative to
+     * @param stateDir   directory keeping the state of the compilation in progress
+     */
+    public IncrementalInstrumentation(Logger logger, File dataDir, File classesDir, File sourceRoot, File stateDir) {
+
+        this.logger = logger;
+        this.coverageFile = new File(dataDir, COVERAGE_FILE);
+        this.classesDir = classesDir;
+        this.sourceRoot = sourceRoot;
+        this.previousCoverageFile = new File(stateDir, "previous.coverage");
+        this.snapshotFile = new File(stateDir, "classes.snapshot");
+    }
+
+    /**
+     * Sets the statements of the previous compilation aside, and snapshots its classes. When there are no such
+     * statements, or when their ids are too sparse, the classes are deleted so that everything is compiled again.
+     */
+    public void beforeCompile() throws IOException {
+
+        Files.createDirectories(previousCoverageFile.getParentFile().toPath());
+        if (previousCoverageFile.isFile()) {
+            // the previous compilation failed, and its classes were rolled back: its statements still hold
+            Files.deleteIfExists(coverageFile.toPath());
+        } else if (coverageFile.isFile() && !CoverageFile.read(coverageFile).sparse()) {
+            Files.move(coverageFile.toPath(), previousCoverageFile.toPath());
+        } else {
+            if (coverageFile.isFile()) {
+                logger.info("Statement ids too sparse, compiling {} from scratch to number them again", classesDir);
+                Files.delete(coverageFile.toPath());
+            } else {
+                logger.info("No statements of a previous compilation, compiling {} from scratch", classesDir);
+            }
+            FileUtils.deleteDirectory(classesDir);
+        }
+
+        try (BufferedWriter writer = Files.newBufferedWriter(snapshotFile.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : snapshot().entrySet()) {
+                writer.write(entry.getKey() + '\t' + entry.getValue());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Shifts the statement ids of the recompiled classes, and merges their statements with those of the previous
+     * compilation.
+     *
+     * @return {number of statements, number of recompiled classes}
+     */
+    public long[] afterCompile() throws IOException {
+
+        try {
+            if (!previousCoverageFile.isFile()) {
+                // compiled from scratch
+                return new long[]{coverageFile.isFile() ? CoverageFile.read(coverageFile).records.size() : 0, 0};
+            }
+            CoverageFile previous = CoverageFile.read(previousCoverageFile);
+            if (!coverageFile.isFile()) {
+                // nothing was compiled
+                Files.move(previousCoverageFile.toPath(), coverageFile.toPath());
+                return new long[]{previous.records.size(), 0};
+            }
+            CoverageFile compiled = CoverageFile.read(coverageFile);
+
+            int offset = previous.maxId() + 1;
+            Map<String, String> before = readSnapshot();
+            Set<String> recompiledSources = new HashSet<>();
+            int recompiledClasses = 0;
+            for (Map.Entry<String, String> entry : snapshot().entrySet()) {
+                if (!entry.getValue().equals(before.get(entry.getKey()))) {
+                    recompiledSources.add(shiftIds(new File(classesDir, entry.getKey()), offset));
+                    recompiledClasses++;
+                }
+            }
+
+            List<List<String>> records = new ArrayList<>();
+            for (List<String> record : previous.records) {
+                String path = record.get(1);
+                if (!compiled.paths().contains(path) && !recompiledSources.contains(sourceKey(record))
+                        && source(path).isFile()) {
+                    records.add(record);
+                }
+            }
+            int kept = records.size();
+            for (List<String> record : compiled.records) {
+                List<String> shifted = new ArrayList<>(record);
+                shifted.set(0, String.valueOf(Integer.parseInt(record.get(0)) + offset));
+                records.add(shifted);
+            }
+            logger.info("Kept {} statements, added {} statements of {} recompiled classes (ids from {})",
+                    kept, compiled.records.size(), recompiledClasses, offset);
+
+            new CoverageFile(compiled.header, records).write(coverageFile);
+            Files.delete(previousCoverageFile.toPath());
+            return new long[]{records.size(), recompiledClasses};
+        } finally {
+            Files.deleteIfExists(snapshotFile.toPath());
+        }
+    }
+
+    /**
+     * Adds the offset to the ids of the statements instrumented in the class.
+     *
+     * @return the key of the source of the class (see {@link #sourceKey(List)})
+     */
+    static String shiftIds(File classFile, int offset) throws IOException {
+
+        ClassNode node = new ClassNode();
+        new ClassReader(Files.readAllBytes(classFile.toPath())).accept(node, 0);
+
+        boolean shifted = false;
+        for (MethodNode method : node.methods) {
+            for (AbstractInsnNode instruction : method.instructions.toArray()) {
+                if (!(instruction instanceof MethodInsnNode)) {
+                    continue;
+                }
+                MethodInsnNode call = (MethodInsnNode) instruction;
+                if (!call.name.equals("invoked") || !INVOKERS.contains(call.owner)) {
+                    continue;
+                }
+                // every argument is a constant, the id being the first one
+                AbstractInsnNode id = call;
+                for (int i = 0; i < Type.getArgumentTypes(call.desc).length; i++) {
+                    id = previousInstruction(id);
+                }
+                Integer value = intConstant(id);
+                if (value == null) {
+                    throw new IllegalStateException("Unexpected instrumentation of " + classFile + "; please compile "
+                            + "without incrementalCompile");
+                }
+                method.instructions.set(id, new LdcInsnNode(value + offset));
+                shifted = true;
+            }
+        }
+
+        if (shifted) {
+            ClassWriter writer = new ClassWriter(0);
+            node.accept(writer);
+            // replaced rather than written in place, as the class may be linked elsewhere
+            FileTime lastModified = Files.getLastModifiedTime(classFile.toPath());
+            Path tempFile = new File(classFile.getPath() + ".tmp").toPath();
+            Files.write(tempFile, writer.toByteArray());
+            Files.move(tempFile, classFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            // the compiler stamps the classes it wrote by their modification time, which must hold for the class
+            // not to be taken as changed (and compiled again, with other ids) by the next compilation
+            Files.setLastModifiedTime(classFile.toPath(), lastModified);
+        }
+
+        int lastSlash = node.name.lastIndexOf('/');
+        String packageName = lastSlash < 0 ? EMPTY_PACKAGE : node.name.substring(0, lastSlash).replace('/', '.');
+        return packageName + '/' + node.sourceFile;
+    }
+
+    /**
+     * @return the package and file name of the source of a statement
+     */
+    private static String sourceKey(List<String> record) {
+
+        return record.get(2) + '/' + new File(record.get(1)).getName();
+    }
+
+    private File source(String path) {
+
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(sourceRoot, path);
+    }
+
+    private static AbstractInsnNode previousInstruction(AbstractInsnNode instruction) {
+
+        AbstractInsnNode previous = instruction.getPrevious();
+        while (previous != null && previous.getOpcode() < 0) {
+            previous = previous.getPrevious();
+        }
+        if (previous == null) {
+            throw new IllegalStateException("Instrumented statement without id");
+        }
+        return previous;
+    }
+
+    private static Integer intConstant(AbstractInsnNode instruction) {
+
+        int opcode = instruction.getOpcode();
+        if (opcode >= Opcodes.ICONST_M1 && opcode <= Opcodes.ICONST_5 && instruction instanceof InsnNode) {
+            return opcode - Opcodes.ICONST_0;
+        }
+        if ((opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH) && instruction instanceof IntInsnNode) {
+            return ((IntInsnNode) instruction).operand;
+        }
+        if (instruction instanceof LdcInsnNode && ((LdcInsnNode) instruction).cst instanceof Integer) {
+            return (Integer) ((LdcInsnNode) instruction).cst;
+        }
+        return null;
+    }
+
+    /**
+     * @return the modification time and size of each class, by relative path
+     */
+    private Map<String, String> snapshot() throws IOException {
+
+        Map<String, String> snapshot = new HashMap<>();
+        if (!classesDir.isDirectory()) {
+            return snapshot;
+        }
+        Path root = classesDir.toPath();
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.filter(p -> p.toString().endsWith(".class")).collect(Collectors.toList())) {
+                File file = path.toFile();
+                snapshot.put(root.relativize(path).toString(), file.lastModified() + "\t" + file.length());
+            }
+        }
+        return snapshot;
+    }
+
+    private Map<String, String> readSnapshot() throws IOException {
+
+        Map<String, String> snapshot = new HashMap<>();
+        if (snapshotFile.isFile()) {
+            for (String line : Files.readAllLines(snapshotFile.toPath(), StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                snapshot.put(line.substring(0, tab), line.substring(tab + 1));
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * The statements of a coverage file, as the lines of each statement: the id, the source path, the package name
+     * and so on (see the header of the file).
+     */
+    static final class CoverageFile {
+
+        final List<String> header;
+        final List<List<String>> records;
+        private Set<String> paths;
+
+        CoverageFile(List<String> header, List<List<String>> records) {
+
+            this.header = header;
+            this.records = records;
+        }
+
+        static CoverageFile read(File file) throws IOException {
+
+            List<String> header = new ArrayList<>();
+            List<List<String>> records = new ArrayList<>();
+            List<String> record = new ArrayList<>();
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                if (records.isEmpty() && record.isEmpty() && line.startsWith("#")) {
+                    header.add(line);
+                } else if (line.equals(RECORD_SEPARATOR)) {
+                    records.add(record);
+                    record = new ArrayList<>();
+                } else {
+                    record.add(line);
+                }
+            }
+            return new CoverageFile(header, records);
+        }
+
+        int maxId() {
+
+            int max = 0;
+            for (List<String> record : records) {
+                max = Math.max(max, Integer.parseInt(record.get(0)));
+            }
+            return max;
+        }
+
+        /**
+         * @return whether the ids span more than {@link #MAX_ID_SPREAD} times the number of statements
+         */
+        boolean sparse() {
+
+            return maxId() + 1L > (long) MAX_ID_SPREAD * records.size();
+        }
+
+        Set<String> paths() {
+
+            if (paths == null) {
+                paths = records.stream().map(record -> record.get(1)).collect(Collectors.toSet());
+            }
+            return paths;
+        }
+
+        void write(File file) throws IOException {
+
+            Path tempFile = new File(file.getPath() + ".tmp").toPath();
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                for (String line : header) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+                for (List<String> record : records) {
+                    for (String line : record) {
+                        writer.write(line);
+                        writer.write('\n');
+                    }
+                    writer.write(RECORD_SEPARATOR);
+                    writer.write('\n');
+                }
+            }
+            Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.scoverage;
+
+import org.apache.commons.io.FileUtils;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Rewrites instrumented classes so that their measurements are written to another data directory.
+ *
+ * The instrumented classes pass the data directory they were compiled with to the scoverage runtime as a string
+ * constant, and the runtime has no setting to write the measurements elsewhere. The constant is thus replaced
+ * wherever a class loads it, and only the classes holding it are rewritten.
+ */
+public class MeasurementDirRewriter {
+
+    private final String dataDir;
+    private final String measurementDir;
+
+    /**
+     * @param dataDir        the data directory the classes were compiled with
+     * @param measurementDir the directory the measurements are to be written to instead
+     */
+    public MeasurementDirRewriter(String dataDir, String measurementDir) {
+
+        this.dataDir = dataDir;
+        this.measurementDir = measurementDir;
+    }
+
+    /**
+     * Writes the classes of the given directory which refer to the data directory to the destination directory,
+     * which is emptied first, with the data directory replaced. The other classes (and any other file) are to be
+     * read from the given directory, after the destination directory.
+     *
+     * @return the number of classes rewritten
+     */
+    public int rewriteClasses(File classesDir, File destinationDir) throws IOException {
+
+        FileUtils.deleteDirectory(destinationDir);
+        Files.createDirectories(destinationDir.toPath());
+        if (!classesDir.isDirectory()) {
+            return 0;
+        }
+
+        Path source = classesDir.toPath();
+        List<Path> classFiles;
+        try (Stream<Path> paths = Files.walk(source)) {
+            classFiles = paths
+                    .filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".class"))
+                    .collect(Collectors.toList());
+        }
+
+        int rewritten = 0;
+        for (Path file : classFiles) {
+            byte[] classFile = rewrite(Files.readAllBytes(file));
+            if (classFile != null) {
+                Path target = destinationDir.toPath().resolve(source.relativize(file).toString());
+                Files.createDirectories(target.getParent());
+                Files.write(target, classFile);
+                rewritten++;
+            }
+        }
+        return rewritten;
+    }
+
+    /**
+     * @return the class file with the data directory replaced, or null if it does not refer to the data directory
+     */
+    byte[] rewrite(byte[] classFile) {
+
+        ClassReader reader = new ClassReader(classFile);
+        // the constant pool of the class is kept, so the rest of the class is written as it was
+        ClassWriter writer = new ClassWriter(reader, 0);
+        DataDirRemapper remapper = new DataDirRemapper(writer);
+        reader.accept(remapper, 0);
+        return remapper.replaced ? writer.toByteArray() : null;
+    }
+
+    /** Replaces the data directory in the constants loaded by the methods, and in those of the fields */
+    private class DataDirRemapper extends ClassVisitor {
+
+        private boolean replaced;
+
+        DataDirRemapper(ClassVisitor classVisitor) {
+
+            super(Opcodes.ASM9, classVisitor);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+
+            return super.visitField(access, name, descriptor, signature, map(value));
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                                         String[] exceptions) {
+
+            return new MethodVisitor(Opcodes.ASM9, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+
+                @Override
+                public void visitLdcInsn(Object value) {
+
+                    super.visitLdcInsn(map(value));
+                }
+
+                @Override
+                public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+                                                   Object... bootstrapMethodArguments) {
+
+                    Object[] arguments = new Object[bootstrapMethodArguments.length];
+                    for (int i = 0; i < arguments.length; i++) {
+                        arguments[i] = map(bootstrapMethodArguments[i]);
+                    }
+                    super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, arguments);
+                }
+            };
+        }
+
+        private Object map(Object value) {
+
+            if (dataDir.equals(value)) {
+                replaced = true;
+                return measurementDir;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package org.scoverage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The measurements of a data directory, i.e. the statements invoked by the tests, with the names of the tests invoking
+ * them when the runtime records them.
+ *
+ * The runtime writes them as text, one file per thread of each test JVM with one id (and test name) per line. Once a
+ * test task is done, they are compacted into a single binary file holding the distinct pairs of id and test name:
+ * <pre>
+ * int    magic number
+ * int    format version
+ * int    number of test names, followed by each of them (see {@link DataOutputStream#writeUTF}), an empty name
+ *        standing for the invocations recorded without test name
+ * int    number of invoked statements, followed for each of them, in ascending order of id, by:
+ * varint the difference between its id and the previous one (or its id, for the first one)
+ * varint the number of its tests, followed by the index of each of them among the test names
+ * </pre>
+ * The invocation count of a statement is the number of its distinct tests, as the reporter counts it from the text
+ * files. The varints are unsigned, seven bits per byte with the high bit set on all but the last byte.
+ *
+ * The measurements of a data directory are those of its text files and compacted file, and those of the compacted
+ * files of its sub-directories (the data directories of its test tasks).
+ */
+public class MeasurementFiles {
+
+    public static final String TEXT_PREFIX = "scoverage.measurements.";
+    public static final String COMPACT_FILE = "scoverage.invoked";
+
+    private static final int MAGIC = 0x53434f56;
+    private static final int VERSION = 2;
+    /** the bitset of the invoked ids, without counts nor test names */
+    private static final int BITSET_VERSION = 1;
+
+    private MeasurementFiles() {
+    }
+
+    /**
+     * @return the names of the tests (or an empty name) having invoked each statement according to the measurements
+     * of the data directory, by id of the statement
+     */
+    public static SortedMap<Integer, SortedSet<String>> invoked(File dataDir) throws IOException {
+
+        SortedMap<Integer, SortedSet<String>> invoked = new TreeMap<>();
+        for (File file : files(dataDir)) {
+            addAll(invoked, file.getName().equals(COMPACT_FILE) ? readCompact(file) : readText(file));
+        }
+        return invoked;
+    }
+    /**
+     * @return the measurement files of the data directory, in a stable order
+     */
+    public static List<File> files(File dataDir) {
+
+        List<File> files = new ArrayList<>(textFiles(dataDir));
+        File compactFile = new File(dataDir, COMPACT_FILE);
+        if (compactFile.isFile()) {
+            files.add(compactFile);
+        }
+        File[] subDirs = dataDir.listFiles(File::isDirectory);
+        if (subDirs != null) {
+            Arrays.sort(subDirs);
+            for (File subDir : subDirs) {
+                File subDirCompactFile = new File(subDir, COMPACT_FILE);
+                if (subDirCompactFile.isFile()) {
+                    files.add(subDirCompactFile);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @return the text measurement files written by the runtime to the data directory, in a stable order
+     */
+    public static List<File> textFiles(File dataDir) {
+
+        File[] files = dataDir.listFiles((dir, name) -> name.startsWith(TEXT_PREFIX));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files);
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    /**
+     * Compacts the given text measurement files into the given binary file (replacing it).
+     *
+     * @return the names of the tests having invoked each statement, by id of the statement
+     */
+    public static SortedMap<Integer, SortedSet<String>> compact(List<File> textFiles, File compactFile)
+            throws IOException {
+
+        SortedMap<Integer, SortedSet<String>> invoked = new TreeMap<>();
+        for (File file : textFiles) {
+            addAll(invoked, readText(file));
+        }
+        writeCompact(invoked, compactFile);
+        return invoked;
+    }
+
+    private static void addAll(SortedMap<Integer, SortedSet<String>> invoked,
+                               SortedMap<Integer, SortedSet<String>> measurements) {
+
+        measurements.forEach((id, tests) -> invoked.computeIfAbsent(id, key -> new TreeSet<>()).addAll(tests));
+    }
+
+    static SortedMap<Integer, SortedSet<String>> readText(File file) throws IOException {
+
+        SortedMap<Integer, SortedSet<String>> invoked = new TreeMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // <id>, or <id> <test name> when the runtime records the test names
+                int id = 0;
+                int length = 0;
+                while (length < line.length() && Character.isDigit(line.charAt(length))) {
+                    id = id * 10 + (line.charAt(length) - '0');
+                    length++;
+                }
+                if (length > 0) {
+                    String test = length < line.length() ? line.substring(length + 1) : "";
+                    invoked.computeIfAbsent(id, key -> new TreeSet<>()).add(test);
+                }
+            }
+        }
+        return invoked;
+    }
+
+    static SortedMap<Integer, SortedSet<String>> readCompact(File file) throws IOException {
+
+        SortedMap<Integer, SortedSet<String>> invoked = new TreeMap<>();
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file.toPath()));
+             DataInputStream input = new DataInputStream(stream)) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not a compacted measurement file: " + file);
+            }
+            int version = input.readInt();
+            if (version == BITSET_VERSION) {
+                byte[] bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+                BitSet.valueOf(bytes).stream().forEach(id -> invoked.put(id, new TreeSet<>(Collections.singleton(""))));
+                return invoked;
+            }
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of compacted measurement file " + file);
+            }
+
+            String[] tests = new String[input.readInt()];
+            for (int i = 0; i < tests.length; i++) {
+                tests[i] = input.readUTF();
+            }
+            int count = input.readInt();
+            int id = 0;
+            for (int i = 0; i < count; i++) {
+                id += readVarInt(input);
+                SortedSet<String> idTests = new TreeSet<>();
+                int testCount = readVarInt(input);
+                for (int j = 0; j < testCount; j++) {
+                    idTests.add(tests[readVarInt(input)]);
+                }
+                invoked.put(id, idTests);
+            }
+        }
+        return invoked;
+    }
+
+    static void writeCompact(SortedMap<Integer, SortedSet<String>> invoked, File file) throws IOException {
+
+        Map<String, Integer> tests = new LinkedHashMap<>();
+        invoked.values().forEach(idTests -> idTests.forEach(test -> tests.putIfAbsent(test, tests.size())));
+
+        Path tempFile = new File(file.getPath() + ".tmp").toPath();
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(tempFile));
+             DataOutputStream output = new DataOutputStream(stream)) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(tests.size());
+            for (String test : tests.keySet()) {
+                output.writeUTF(test);
+            }
+            output.writeInt(invoked.size());
+            int previousId = 0;
+            for (Map.Entry<Integer, SortedSet<String>> entry : invoked.entrySet()) {
+                writeVarInt(output, entry.getKey() - previousId);
+                previousId = entry.getKey();
+                writeVarInt(output, entry.getValue().size());
+                for (String test : entry.getValue()) {
+                    writeVarInt(output, tests.get(test));
+                }
+            }
+        }
+        Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static int readVarInt(DataInputStream input) throws IOException {
+
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = input.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void writeVarInt(DataOutputStream output, int value) throws IOException {
+
+        while ((value & ~0x7f) != 0) {
+            output.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+}
@@ -0,0 +1,231 @@
+package org.scoverage;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Leaves out the classes compiled with scoverage that are identical to the normally compiled ones,
+ * i.e. the classes which scoverage did not instrument, so that the normally compiled ones are used instead.
+ * The other classes are linked (or copied) to a separate directory, leaving the compiled classes untouched.
+ *
+ * Only classes with the same relative path and size are compared, and they are compared in parallel.
+ * Digests of the normally compiled classes are kept in a manifest, so that a normally compiled class which has
+ * not changed since a previous run is not read again.
+ */
+public class NonInstrumentedClassPruner {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final Logger logger;
+    private final File manifestFile;
+
+    /**
+     * @param logger       logger for progress
+     * @param manifestFile file keeping the digests of the normally compiled classes between runs (may be null)
+     */
+    public NonInstrumentedClassPruner(Logger logger, File manifestFile) {
+
+        this.logger = logger;
+        this.manifestFile = manifestFile;
+    }
+
+    /**
+     * Links the classes in the instrumented directory which differ from those in the original directory
+     * to the pruned directory, which is emptied first.
+     *
+     * @param originalDir     directory with the normally compiled classes
+     * @param instrumentedDir directory with the classes compiled with scoverage
+     * @param prunedDir       directory receiving the instrumented classes only
+     * @return the number of classes left out
+     */
+    public int prune(File originalDir, File instrumentedDir, File prunedDir) throws IOException {
+
+        FileUtils.deleteDirectory(prunedDir);
+        Files.createDirectories(prunedDir.toPath());
+        if (!instrumentedDir.isDirectory()) {
+            return 0;
+        }
+
+        Map<String, BasicFileAttributes> originalClasses = originalDir.isDirectory()
+                ? index(originalDir.toPath())
+                : new HashMap<>();
+        Map<String, BasicFileAttributes> instrumentedClasses = index(instrumentedDir.toPath());
+        Map<String, Digest> previousDigests = readManifest();
+        Map<String, Digest> digests = new ConcurrentHashMap<>();
+
+        List<String> candidates = instrumentedClasses.entrySet().stream()
+                .filter(e -> {
+                    BasicFileAttributes original = originalClasses.get(e.getKey());
+                    return original != null && original.size() == e.getValue().size();
+                })
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+
+        List<String> identicalClasses = candidates.parallelStream()
+                .filter(relativePath -> {
+                    BasicFileAttributes attributes = originalClasses.get(relativePath);
+                    Digest original = previousDigests.get(relativePath);
+                    if (original == null || !original.matches(attributes)) {
+                        original = new Digest(attributes, digest(originalDir.toPath().resolve(relativePath)));
+                    }
+                    digests.put(relativePath, original);
+                    return original.digest.equals(digest(instrumentedDir.toPath().resolve(relativePath)));
+                })
+                .collect(Collectors.toList());
+
+        Set<String> leftOut = new HashSet<>(identicalClasses);
+        instrumentedClasses.keySet().parallelStream()
+                .filter(relativePath -> !leftOut.contains(relativePath))
+                .forEach(relativePath -> link(instrumentedDir.toPath().resolve(relativePath),
+                        prunedDir.toPath().resolve(relativePath)));
+
+        // digests of classes that were not compared this time remain valid as long as the class does not change
+        previousDigests.forEach((relativePath, digest) -> {
+            BasicFileAttributes attributes = originalClasses.get(relativePath);
+            if (attributes != null && digest.matches(attributes)) {
+                digests.putIfAbsent(relativePath, digest);
+            }
+        });
+        writeManifest(digests);
+
+        logger.info("[scoverage] Left out {} non-instrumented classes out of {} compiled classes ({} compared)",
+                identicalClasses.size(), instrumentedClasses.size(), candidates.size());
+        return identicalClasses.size();
+    }
+
+    private static Map<String, BasicFileAttributes> index(Path dir) throws IOException {
+
+        Map<String, BasicFileAttributes> files = new HashMap<>();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (attributes.isRegularFile()) {
+                    files.put(dir.relativize(path).toString(), attributes);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static void link(Path source, Path target) {
+
+        try {
+            Files.createDirectories(target.getParent());
+            try {
+                Files.createLink(target, source);
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(source, target);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String digest(Path file) {
+
+        try (InputStream stream = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<String, Digest> readManifest() throws IOException {
+
+        Map<String, Digest> digests = new HashMap<>();
+        if (manifestFile == null || !manifestFile.isFile()) {
+            return digests;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // <digest> <size> <last modified> <relative path>
+                String[] fields = line.split(" ", 4);
+                if (fields.length == 4) {
+                    digests.put(fields[3], new Digest(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[0]));
+                }
+            }
+        } catch (NumberFormatException e) {
+            logger.info("[scoverage] Ignoring corrupt class digest manifest {}", manifestFile);
+            digests.clear();
+        }
+        return digests;
+    }
+
+    private void writeManifest(Map<String, Digest> digests) throws IOException {
+
+        if (manifestFile == null) {
+            return;
+        }
+
+        manifestFile.getParentFile().mkdirs();
+        Path tempFile = new File(manifestFile.getPath() + ".tmp").toPath();
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Digest> entry : digests.entrySet()) {
+                Digest digest = entry.getValue();
+                writer.write(digest.digest + " " + digest.size + " " + digest.lastModified + " " + entry.getKey());
+                writer.newLine();
+            }
+        }
+        Files.move(tempFile, manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static final class Digest {
+
+        private final long size;
+        private final long lastModified;
+        private final String digest;
+
+        private Digest(long size, long lastModified, String digest) {
+
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+
+        private Digest(BasicFileAttributes attributes, String digest) {
+
+            this(attributes.size(), attributes.lastModifiedTime().toMillis(), digest);
+        }
+
+        private boolean matches(BasicFileAttributes attributes) {
+
+            return size == attributes.size() && lastModified == attributes.lastModifiedTime().toMillis();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.scoverage;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Loads the scoverage reporter and its scala library in isolation from the build, together with the few plugin
+ * classes which link against the reporter. Every other class, including the work parameters shared with the tasks,
+ * comes from the classloader of the plugin.
+ */
+public class ReporterClassLoader extends URLClassLoader {
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    /** plugin classes (with their nested classes and closures) which are loaded by this classloader */
+    static final List<String> ISOLATED_PLUGIN_CLASSES = Arrays.asList(
+            "org.scoverage.ScoverageReporter",
+            "org.scoverage.ScoverageWriter",
+            "org.scoverage.CoverageSnapshots",
+            "org.scoverage.CoverageData",
+            "org.scoverage.CoverageCache",
+            "org.scoverage.IncrementalHtmlReport");
+
+    /** packages which are never taken from the build, even when some other plugin brings them in */
+    static final List<String> ISOLATED_PACKAGES = Arrays.asList("scala.", "scoverage.");
+
+    /**
+     * @param classpath the reporter and its dependencies
+     * @param parent    the classloader of the plugin
+     */
+    public ReporterClassLoader(Collection<File> classpath, ClassLoader parent) {
+
+        super(urls(classpath), parent);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+
+        if (!isIsolated(name)) {
+            return super.loadClass(name, resolve);
+        }
+
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> loadedClass = findLoadedClass(name);
+            if (loadedClass == null) {
+                try {
+                    loadedClass = findClass(name);
+                } catch (ClassNotFoundException e) {
+                    return super.loadClass(name, resolve);
+                }
+            }
+            if (resolve) {
+                resolveClass(loadedClass);
+            }
+            return loadedClass;
+        }
+    }
+
+    static boolean isIsolated(String className) {
+
+        for (String isolatedPackage : ISOLATED_PACKAGES) {
+            if (className.startsWith(isolatedPackage)) {
+                return true;
+            }
+        }
+        for (String isolatedClass : ISOLATED_PLUGIN_CLASSES) {
+            if (className.equals(isolatedClass) || className.startsWith(isolatedClass + "$")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static URL[] urls(Collection<File> classpath) {
+
+        List<URL> urls = new ArrayList<>();
+        try {
+            for (File file : classpath) {
+                urls.add(file.toURI().toURL());
+            }
+            // the isolated plugin classes
+            urls.add(ReporterClassLoader.class.getProtectionDomain().getCodeSource().getLocation());
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return urls.toArray(new URL[0]);
+    }
+}
@@ -0,0 +1,69 @@
+package org.scoverage
+
+import org.gradle.api.Project
+import org.gradle.api.logging.Logger
+import org.gradle.api.logging.Logging
+import org.gradle.api.provider.Provider
+import org.gradle.api.services.BuildService
+import org.gradle.api.services.BuildServiceParameters
+
+import java.lang.reflect.InvocationTargetException
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Owns one isolated classloader of the scoverage reporter per scoverage and scala binary version, shared by all the
+ * report, aggregation and check work of the build. The classloaders are closed when the build is done.
+ */
+abstract class ReporterClassLoaderService implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+
+    static final String NAME = 'scoverageReporterClassLoaders'
+
+    /** the class running the work within the reporter classloader */
+    static final String REPORTER_CLASS = 'org.scoverage.ScoverageReporter'
+
+    private static final Logger LOGGER = Logging.getLogger(ReporterClassLoaderService)
+
+    private final Map<String, ReporterClassLoader> classLoaders = new ConcurrentHashMap<>()
+
+    static Provider<ReporterClassLoaderService> register(Project project) {
+        project.gradle.sharedServices.registerIfAbsent(NAME, ReporterClassLoaderService) {}
+    }
+
+    /**
+     * @param key       the scoverage and scala binary versions of the reporter
+     * @param classpath the reporter and its dependencies; only used the first time the key is seen
+     */
+    ClassLoader classLoader(String key, Collection<File> classpath) {
+        def parent = ReporterClassLoaderService.classLoader
+        classLoaders.computeIfAbsent(key) { new ReporterClassLoader(classpath, parent) }
+    }
+
+    @Override
+    void close() {
+        LOGGER.debug("[scoverage] Closing {} reporter classloaders", classLoaders.size())
+        classLoaders.values().each { it.close() }
+        classLoaders.clear()
+    }
+
+    /**
+     * Runs the given static method of {@link #REPORTER_CLASS} with the given parameters, within the shared reporter
+     * classloader when there is one (or else within the classloader of the work itself).
+     */
+    static void run(String method, Class<? extends ScoverageReporterParameters> parametersType,
+                    ScoverageReporterParameters parameters) {
+        def classLoader = parameters.classLoaders.isPresent()
+                ? parameters.classLoaders.get().classLoader(parameters.reporterKey.get(), parameters.reporterClasspath.files)
+                : ReporterClassLoaderService.classLoader
+
+        def thread = Thread.currentThread()
+        def contextClassLoader = thread.contextClassLoader
+        thread.contextClassLoader = classLoader
+        try {
+            Class.forName(REPORTER_CLASS, true, classLoader).getMethod(method, parametersType).invoke(null, parameters)
+        } catch (InvocationTargetException e) {
+            throw e.cause
+        } finally {
+            thread.contextClassLoader = contextClassLoader
+        }
+    }
+}
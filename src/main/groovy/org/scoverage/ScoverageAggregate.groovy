@@ -4,16 +4,22 @@ import org.gradle.api.DefaultTask
 import org.gradle.api.file.FileCollection
 import org.gradle.api.provider.ListProperty
 import org.gradle.api.provider.Property
+import org.gradle.api.tasks.CacheableTask
 import org.gradle.api.tasks.Input
 import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.LocalState
 import org.gradle.api.tasks.Nested
 import org.gradle.api.tasks.OutputDirectory
 import org.gradle.api.tasks.PathSensitive
 import org.gradle.api.tasks.TaskAction
-import scoverage.reporter.CoverageAggregator
+import org.gradle.workers.WorkerExecutor
+
+import javax.inject.Inject
 
 import static org.gradle.api.tasks.PathSensitivity.RELATIVE
 
+@CacheableTask
 class ScoverageAggregate extends DefaultTask {
 
     @Nested
@@ -26,9 +32,24 @@ class ScoverageAggregate extends DefaultTask {
     @OutputDirectory
     final Property<File> reportDir = project.objects.property(File)
 
-    @Input
+    @Internal
     final ListProperty<File> dirsToAggregateFrom = project.objects.listProperty(File)
 
+    /** root against which the paths in the coverage data are resolved */
+    @Internal
+    final Property<File> sourceRoot = project.objects.property(File)
+
+    /** the coverage data in {@link #dirsToAggregateFrom}, which is what the aggregation depends on (not the paths) */
+    @InputFiles
+    @PathSensitive(RELATIVE)
+    final FileCollection coverageDataFiles = project.files(dirsToAggregateFrom).asFileTree.matching {
+        include 'scoverage.coverage', 'scoverage.measurements.*', 'scoverage.invoked', '*/scoverage.invoked'
+    }
+
+    /** snapshots of the aggregated data directories, reused while their content does not change */
+    @LocalState
+    final Property<File> snapshotDir = project.objects.property(File)
+
     @Input
     final Property<Boolean> deleteReportsOnAggregation = project.objects.property(Boolean)
 
@@ -44,34 +65,46 @@ class ScoverageAggregate extends DefaultTask {
     final Property<Boolean> coverageOutputHTML = project.objects.property(Boolean)
     @Input
     final Property<Boolean> coverageDebug = project.objects.property(Boolean)
+    @Input
+    final Property<Boolean> incrementalHtml = project.objects.property(Boolean)
+
+    /** where the metrics of the task's phases are written */
+    @Internal
+    final Property<File> metricsFile = project.objects.property(File)
+
+    /** collects the metrics for the summary at the end of the build, when one is requested */
+    @Internal
+    final Property<ScoverageMetricsService> metricsService = project.objects.property(ScoverageMetricsService)
+
+    private final WorkerExecutor workerExecutor
 
-    ScoverageAggregate() {
-        dirsToAggregateFrom.set([project.extensions.scoverage.dataDir.get()])
+    @Inject
+    ScoverageAggregate(WorkerExecutor workerExecutor) {
+        this.workerExecutor = workerExecutor
+        snapshotDir.set(project.layout.buildDirectory.file("scoverage-snapshots/$name").map { it.asFile })
+        metricsFile.set(project.layout.buildDirectory.file("reports/scoverage-metrics/${name}.json").map { it.asFile })
     }
 
     @TaskAction
     def aggregate() {
-        runner.run {
-            reportDir.get().deleteDir()
-            reportDir.get().mkdirs()
-
-            def dirs = []
-            dirs.addAll(dirsToAggregateFrom.get())
-            def sourceRoot = getProject().getRootDir()
-            def coverage = CoverageAggregator.aggregate(dirs.unique() as File[], sourceRoot)
-
-            if (coverage.nonEmpty()) {
-                new ScoverageWriter(project.logger).write(
-                        sources.get().getFiles(),
-                        reportDir.get(),
-                        coverage.get(),
-                        sourceEncoding.get(),
-                        coverageOutputCobertura.get(),
-                        coverageOutputXML.get(),
-                        coverageOutputHTML.get(),
-                        coverageDebug.get()
-                )
-            }
+        metricsService.getOrNull()?.register(metricsFile.get())
+        runner.workQueue(workerExecutor).submit(ScoverageReportAction) { parameters ->
+            parameters.dataDirs.set(dirsToAggregateFrom)
+            parameters.sourceRoot.set(sourceRoot)
+            parameters.snapshotDir.set(snapshotDir)
+            parameters.cacheDir.set(new File(temporaryDir, 'coverage-cache'))
+            parameters.sources.from(sources.get())
+            parameters.reportDir.set(reportDir.get())
+            parameters.cleanReportDir.set(true)
+            parameters.sourceEncoding.set(sourceEncoding.get())
+            parameters.coverageOutputCobertura.set(coverageOutputCobertura.get())
+            parameters.coverageOutputXML.set(coverageOutputXML.get())
+            parameters.coverageOutputHTML.set(coverageOutputHTML.get())
+            parameters.coverageDebug.set(coverageDebug.get())
+            parameters.incrementalHtml.set(incrementalHtml.get())
+            runner.configure(parameters)
+            parameters.taskPath.set(path)
+            parameters.metricsFile.set(metricsFile)
         }
     }
 }
@@ -0,0 +1,80 @@
+package org.scoverage
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.provider.ListProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.Nested
+import org.gradle.api.tasks.TaskAction
+import org.gradle.workers.WorkerExecutor
+import org.scoverage.ScoverageExtension.CheckConfig
+
+import javax.inject.Inject
+
+/**
+ * Evaluates all the configured checks together, either against the generated reports
+ * or straight against the coverage data.
+ */
+class ScoverageCheck extends DefaultTask {
+
+    @Nested
+    ScoverageRunner runner
+
+    @Input
+    final ListProperty<CheckConfig> checks = project.objects.listProperty(CheckConfig)
+
+    /** whether the rates are read from the reports, or computed from the coverage data */
+    @Input
+    final Property<Boolean> fromReports = project.objects.property(Boolean)
+
+    @Internal
+    final Property<File> reportDir = project.objects.property(File)
+
+    @Internal
+    final ListProperty<File> dataDirs = project.objects.listProperty(File)
+
+    @Internal
+    final Property<File> sourceRoot = project.objects.property(File)
+
+    /** where the metrics of the task's phases are written */
+    @Internal
+    final Property<File> metricsFile = project.objects.property(File)
+
+    /** collects the metrics for the summary at the end of the build, when one is requested */
+    @Internal
+    final Property<ScoverageMetricsService> metricsService = project.objects.property(ScoverageMetricsService)
+
+    private final WorkerExecutor workerExecutor
+
+    @Inject
+    ScoverageCheck(WorkerExecutor workerExecutor) {
+        this.workerExecutor = workerExecutor
+        metricsFile.set(project.layout.buildDirectory.file("reports/scoverage-metrics/${name}.json").map { it.asFile })
+    }
+
+    @TaskAction
+    def checkCoverage() {
+        metricsService.getOrNull()?.register(metricsFile.get())
+        if (fromReports.get()) {
+            def metrics = new ScoverageMetrics(path)
+            def checking = metrics.start('check').files(checks.get().collect { it.coverageType.fileName }.unique().size())
+            try {
+                new CoverageChecker(logger).checkCoverage(reportDir.get(), checks.get())
+            } finally {
+                checking.end()
+                metrics.write(metricsFile.get())
+            }
+        } else {
+            runner.workQueue(workerExecutor).submit(ScoverageCheckAction) { parameters ->
+                parameters.dataDirs.set(dataDirs)
+                parameters.cacheDir.set(new File(temporaryDir, 'coverage-cache'))
+                parameters.sourceRoot.set(sourceRoot)
+                parameters.checks.set(checks)
+                runner.configure(parameters)
+                parameters.taskPath.set(path)
+                parameters.metricsFile.set(metricsFile)
+            }
+        }
+    }
+}
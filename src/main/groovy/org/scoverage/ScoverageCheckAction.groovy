@@ -0,0 +1,15 @@
+package org.scoverage
+
+import org.gradle.workers.WorkAction
+
+/**
+ * Evaluates the checks against the aggregated coverage data, without any report being written.
+ * Runs through the worker API, within the shared classloader of the scoverage reporter (or a forked process).
+ */
+abstract class ScoverageCheckAction implements WorkAction<ScoverageCheckParameters> {
+
+    @Override
+    void execute() {
+        ReporterClassLoaderService.run('check', ScoverageCheckParameters, parameters)
+    }
+}
@@ -0,0 +1,17 @@
+package org.scoverage
+
+import org.gradle.api.provider.ListProperty
+import org.gradle.api.provider.Property
+import org.scoverage.ScoverageExtension.CheckConfig
+
+/**
+ * Parameters of a check evaluated straight against coverage data.
+ */
+interface ScoverageCheckParameters extends ScoverageReporterParameters {
+
+    ListProperty<File> getDataDirs()
+
+    Property<File> getSourceRoot()
+
+    ListProperty<CheckConfig> getChecks()
+}
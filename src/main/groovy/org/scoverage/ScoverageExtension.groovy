@@ -43,6 +43,30 @@ class ScoverageExtension {
 
     final Property<Boolean> deleteReportsOnAggregation
 
+    /** whether only the pages of the HTML report whose coverage changed are written, instead of all of them */
+    final Property<Boolean> incrementalHtmlReport
+
+    /** maximum number of data directories read and merged concurrently by an aggregation; the number of processors when not set */
+    final Property<Integer> aggregationParallelism
+
+    /** maximum heap size of a separate report process; reports are generated inside the daemon when not set */
+    final Property<String> reportMaxHeapSize
+
+    /** whether checks are evaluated straight from the coverage data, without generating the reports first */
+    final Property<Boolean> checkWithoutReports
+
+    /**
+     * whether the aggregated reports are written straight from the coverage data, without the reports of the test
+     * tasks (and of the sub-projects) being written first
+     */
+    final Property<Boolean> aggregateWithoutReports
+
+    /** whether the instrumented classes are compiled incrementally, instead of from scratch on every change */
+    final Property<Boolean> incrementalCompile
+
+    /** whether the java classes and resources of main are used by the instrumented code, instead of being built again */
+    final Property<Boolean> reuseJavaAndResources
+
     final List<CheckConfig> checks = new ArrayList<>()
 
     final Property<CoverageType> coverageType
@@ -89,6 +113,25 @@ class ScoverageExtension {
         deleteReportsOnAggregation = project.objects.property(Boolean)
         deleteReportsOnAggregation.set(false)
 
+        incrementalHtmlReport = project.objects.property(Boolean)
+        incrementalHtmlReport.set(false)
+
+        reportMaxHeapSize = project.objects.property(String)
+
+        aggregationParallelism = project.objects.property(Integer)
+
+        checkWithoutReports = project.objects.property(Boolean)
+        checkWithoutReports.set(false)
+
+        aggregateWithoutReports = project.objects.property(Boolean)
+        aggregateWithoutReports.set(false)
+
+        incrementalCompile = project.objects.property(Boolean)
+        incrementalCompile.set(false)
+
+        reuseJavaAndResources = project.objects.property(Boolean)
+        reuseJavaAndResources.set(true)
+
         coverageType = project.objects.property(CoverageType)
         minimumRate = project.objects.property(BigDecimal)
     }
@@ -99,7 +142,7 @@ class ScoverageExtension {
         checks.add(check)
     }
 
-    static class CheckConfig {
+    static class CheckConfig implements Serializable {
         CoverageType coverageType
         BigDecimal minimumRate
         CheckConfig() {
@@ -0,0 +1,91 @@
+package org.scoverage
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.file.FileCollection
+import org.gradle.api.provider.ListProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.provider.Provider
+import org.gradle.api.tasks.CacheableTask
+import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.LocalState
+import org.gradle.api.tasks.Nested
+import org.gradle.api.tasks.OutputFile
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.TaskAction
+import org.gradle.workers.WorkerExecutor
+
+import javax.inject.Inject
+
+import static org.gradle.api.tasks.PathSensitivity.RELATIVE
+
+/**
+ * Merges the coverage data of a project and of its sub-projects into a single data directory, which the aggregation
+ * of the project and the merge of its parent project read instead of every data directory below it.
+ */
+@CacheableTask
+class ScoverageMerge extends DefaultTask {
+
+    @Nested
+    ScoverageRunner runner
+
+    @Internal
+    final ListProperty<File> dirsToMerge = project.objects.listProperty(File)
+
+    /** root against which the paths in the coverage data are resolved */
+    @Internal
+    final Property<File> sourceRoot = project.objects.property(File)
+
+    /** the coverage data in {@link #dirsToMerge}, which is what the merge depends on (not the paths) */
+    @InputFiles
+    @PathSensitive(RELATIVE)
+    final FileCollection coverageDataFiles = project.files(dirsToMerge).asFileTree.matching {
+        include 'scoverage.coverage', 'scoverage.measurements.*', 'scoverage.invoked', '*/scoverage.invoked'
+    }
+
+    /** snapshots of the merged data directories, reused while their content does not change */
+    @LocalState
+    final Property<File> snapshotDir = project.objects.property(File)
+
+    /** the coverage file of the merged data directory, with the invocation counts applied */
+    @OutputFile
+    final Property<File> coverageFile = project.objects.property(File)
+
+    /** where the metrics of the task's phases are written */
+    @Internal
+    final Property<File> metricsFile = project.objects.property(File)
+
+    /** collects the metrics for the summary at the end of the build, when one is requested */
+    @Internal
+    final Property<ScoverageMetricsService> metricsService = project.objects.property(ScoverageMetricsService)
+
+    private final WorkerExecutor workerExecutor
+
+    @Inject
+    ScoverageMerge(WorkerExecutor workerExecutor) {
+        this.workerExecutor = workerExecutor
+        snapshotDir.set(project.layout.buildDirectory.file("scoverage-snapshots/$name").map { it.asFile })
+        metricsFile.set(project.layout.buildDirectory.file("reports/scoverage-metrics/${name}.json").map { it.asFile })
+    }
+
+    /** the merged data directory */
+    @Internal
+    Provider<File> getMergedDataDir() {
+        coverageFile.map { it.parentFile }
+    }
+
+    @TaskAction
+    def merge() {
+        metricsService.getOrNull()?.register(metricsFile.get())
+        runner.workQueue(workerExecutor).submit(ScoverageMergeAction) { parameters ->
+            parameters.dataDirs.set(dirsToMerge)
+            parameters.sourceRoot.set(sourceRoot)
+            parameters.snapshotDir.set(snapshotDir)
+            parameters.cacheDir.set(new File(temporaryDir, 'coverage-cache'))
+            parameters.coverageFile.set(coverageFile)
+            runner.configure(parameters)
+            parameters.taskPath.set(path)
+            parameters.metricsFile.set(metricsFile)
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.scoverage
+
+import org.gradle.workers.WorkAction
+
+/**
+ * Merges coverage data into a single data directory.
+ * Runs through the worker API, within the shared classloader of the scoverage reporter (or a forked process).
+ */
+abstract class ScoverageMergeAction implements WorkAction<ScoverageMergeParameters> {
+
+    @Override
+    void execute() {
+        ReporterClassLoaderService.run('merge', ScoverageMergeParameters, parameters)
+    }
+}
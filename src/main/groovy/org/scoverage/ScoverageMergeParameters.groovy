@@ -0,0 +1,22 @@
+package org.scoverage
+
+import org.gradle.api.provider.ListProperty
+import org.gradle.api.provider.Property
+
+/**
+ * Parameters of the merge of coverage data into a single data directory.
+ */
+interface ScoverageMergeParameters extends ScoverageReporterParameters {
+
+    /** directories with coverage data, either written by the tests or merged by the sub-projects */
+    ListProperty<File> getDataDirs()
+
+    /** root against which the paths in the coverage data are resolved */
+    Property<File> getSourceRoot()
+
+    /** where per data directory snapshots are kept between merges; the data is read directly when absent */
+    Property<File> getSnapshotDir()
+
+    /** the coverage file of the merged data directory */
+    Property<File> getCoverageFile()
+}
@@ -0,0 +1,261 @@
+package org.scoverage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Timing and memory metrics of the phases of a single scoverage task, written as JSON:
+ * <pre>
+ * {
+ *   "task": ":reportScoverage",
+ *   "phases": [
+ *     {"name": "aggregate", "wallTimeNanos": 1, "cpuTimeNanos": 1, "allocatedBytes": 1, "statements": 1, "files": 1},
+ *     ...
+ *   ]
+ * }
+ * </pre>
+ * CPU time and allocated bytes are those of the thread running the phase, plus those of the parts of the phase run
+ * on other threads through {@link Phase#onWorker}, and are -1 when the JVM does not measure them. The counters which
+ * do not apply to a phase are left out.
+ */
+public class ScoverageMetrics {
+
+    private final String task;
+    private final List<Phase> phases = new ArrayList<>();
+
+    public ScoverageMetrics(String task) {
+
+        this.task = task;
+    }
+
+    /**
+     * Starts measuring a phase on the current thread; it must be ended on the same thread.
+     */
+    public Phase start(String name) {
+
+        Phase phase = new Phase(name);
+        synchronized (phases) {
+            phases.add(phase);
+        }
+        return phase;
+    }
+
+    public List<Phase> getPhases() {
+
+        synchronized (phases) {
+            return new ArrayList<>(phases);
+        }
+    }
+
+    /**
+     * Writes the phases measured so far (replacing the file atomically).
+     */
+    public void write(File file) throws IOException {
+
+        file.getParentFile().mkdirs();
+        Path tempFile = new File(file.getPath() + ".tmp").toPath();
+        try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            writer.write("{\n  \"task\": " + quote(task) + ",\n  \"phases\": [");
+            List<Phase> phases = getPhases();
+            for (int i = 0; i < phases.size(); i++) {
+                writer.write(i == 0 ? "\n    " : ",\n    ");
+                writer.write(phases.get(i).toJson());
+            }
+            writer.write("\n  ]\n}\n");
+        }
+        Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Number and total size of the regular files under the given directory whose name matches.
+     *
+     * @return {number of files, number of bytes}
+     */
+    public static long[] filesIn(File dir, Predicate<String> fileName) throws IOException {
+
+        long[] result = new long[2];
+        if (!dir.isDirectory()) {
+            return result;
+        }
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.filter(Files::isRegularFile)
+                    .filter(path -> fileName.test(path.getFileName().toString()))
+                    .forEach(path -> {
+                        result[0]++;
+                        result[1] += path.toFile().length();
+                    });
+        }
+        return result;
+    }
+
+    private static String quote(String value) {
+
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * A measured phase; the counters are set by the code running the phase.
+     */
+    public static final class Phase {
+
+        private final String name;
+        private final long startWallTime;
+        private final long startCpuTime;
+        private final long startAllocatedBytes;
+
+        private final AtomicLong workerCpuTime = new AtomicLong();
+        private final AtomicLong workerAllocatedBytes = new AtomicLong();
+
+        private long wallTimeNanos = -1;
+        private long cpuTimeNanos = -1;
+        private long allocatedBytes = -1;
+        private Long statements;
+        private Long files;
+        private Long bytesWritten;
+
+        private Phase(String name) {
+
+            this.name = name;
+            this.startCpuTime = cpuTime();
+            this.startAllocatedBytes = allocatedBytes();
+            this.startWallTime = System.nanoTime();
+        }
+
+        public Phase statements(long statements) {
+
+            this.statements = statements;
+            return this;
+        }
+
+        public Phase files(long files) {
+
+            this.files = files;
+            return this;
+        }
+
+        public Phase bytesWritten(long bytesWritten) {
+
+            this.bytesWritten = bytesWritten;
+            return this;
+        }
+
+        /**
+         * Runs a part of the phase on the current (worker) thread, and adds the CPU time and the allocated bytes of
+         * this thread while running it to those of the phase. The parts run this way must not overlap on a thread.
+         */
+        public <T> T onWorker(Callable<T> work) throws Exception {
+
+            long startCpu = cpuTime();
+            long startAllocated = allocatedBytes();
+            try {
+                return work.call();
+            } finally {
+                add(workerCpuTime, startCpu, cpuTime());
+                add(workerAllocatedBytes, startAllocated, allocatedBytes());
+            }
+        }
+
+        public void end() {
+
+            wallTimeNanos = System.nanoTime() - startWallTime;
+            cpuTimeNanos = total(startCpuTime, cpuTime(), workerCpuTime.get());
+            allocatedBytes = total(startAllocatedBytes, allocatedBytes(), workerAllocatedBytes.get());
+        }
+
+        private static void add(AtomicLong total, long start, long end) {
+
+            // once a worker could not be measured, the total is unknown
+            if (start < 0 || end < 0) {
+                total.set(-1);
+            } else {
+                total.getAndUpdate(value -> value < 0 ? value : value + end - start);
+            }
+        }
+
+        private static long total(long start, long end, long workers) {
+
+            return start < 0 || end < 0 || workers < 0 ? -1 : end - start + workers;
+        }
+
+        public String getName() {
+
+            return name;
+        }
+
+        public long getWallTimeNanos() {
+
+            return wallTimeNanos;
+        }
+
+        public long getCpuTimeNanos() {
+
+            return cpuTimeNanos;
+        }
+
+        public long getAllocatedBytes() {
+
+            return allocatedBytes;
+        }
+
+        private String toJson() {
+
+            StringBuilder json = new StringBuilder("{\"name\": ").append(quote(name))
+                    .append(", \"wallTimeNanos\": ").append(wallTimeNanos)
+                    .append(", \"cpuTimeNanos\": ").append(cpuTimeNanos)
+                    .append(", \"allocatedBytes\": ").append(allocatedBytes);
+            if (statements != null) {
+                json.append(", \"statements\": ").append(statements);
+            }
+            if (files != null) {
+                json.append(", \"files\": ").append(files);
+            }
+            if (bytesWritten != null) {
+                json.append(", \"bytesWritten\": ").append(bytesWritten);
+            }
+            return json.append('}').toString();
+        }
+
+        private static long cpuTime() {
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            return threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled()
+                    ? threads.getCurrentThreadCpuTime()
+                    : -1;
+        }
+
+        private static long allocatedBytes() {
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+                if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()) {
+                    return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                }
+            }
+            return -1;
+        }
+    }
+}
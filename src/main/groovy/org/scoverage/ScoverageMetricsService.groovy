@@ -0,0 +1,75 @@
+package org.scoverage
+
+import groovy.json.JsonSlurper
+import org.gradle.api.Project
+import org.gradle.api.logging.Logger
+import org.gradle.api.logging.Logging
+import org.gradle.api.provider.Provider
+import org.gradle.api.services.BuildService
+import org.gradle.api.services.BuildServiceParameters
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Collects the metrics files written by the scoverage tasks of a build, and logs a summary of them
+ * once the build is done. Only registered when the {@value #SUMMARY_PROPERTY} property is set to true.
+ */
+abstract class ScoverageMetricsService implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+
+    static final String NAME = 'scoverageMetrics'
+    static final String SUMMARY_PROPERTY = 'scoverageMetricsSummary'
+
+    private static final Logger LOGGER = Logging.getLogger(ScoverageMetricsService)
+
+    private final Set<File> metricsFiles = ConcurrentHashMap.newKeySet()
+
+    /**
+     * @return the service shared by all the projects of the build, or null when no summary is requested
+     */
+    static Provider<ScoverageMetricsService> registerIfEnabled(Project project) {
+        def enabled = project.providers.gradleProperty(SUMMARY_PROPERTY).map { Boolean.parseBoolean(it) }.getOrElse(false)
+        enabled ? project.gradle.sharedServices.registerIfAbsent(NAME, ScoverageMetricsService) {} : null
+    }
+
+    void register(File metricsFile) {
+        metricsFiles.add(metricsFile)
+    }
+
+    @Override
+    void close() {
+        def files = metricsFiles.findAll { it.isFile() }.sort()
+        if (files.empty) {
+            return
+        }
+
+        def lines = ['[scoverage] Metrics summary:']
+        def slurper = new JsonSlurper()
+        files.each { file ->
+            def metrics = slurper.parse(file)
+            metrics.phases.each { phase ->
+                def line = "  ${metrics.task} ${phase.name}: ${millis(phase.wallTimeNanos)} wall, " +
+                        "${millis(phase.cpuTimeNanos)} cpu, ${megabytes(phase.allocatedBytes)} allocated"
+                if (phase.statements != null) {
+                    line += ", ${phase.statements} statements"
+                }
+                if (phase.files != null) {
+                    line += ", ${phase.files} files"
+                }
+                if (phase.bytesWritten != null) {
+                    line += ", ${megabytes(phase.bytesWritten)} written"
+                }
+                lines << line
+            }
+        }
+        lines << "  (see ${files.collect { it.parentFile }.unique().join(', ')})"
+        LOGGER.lifecycle(lines.join(System.lineSeparator()))
+    }
+
+    static String millis(Number nanos) {
+        nanos < 0 ? 'n/a' : "${nanos.longValue().intdiv(1_000_000)} ms"
+    }
+
+    static String megabytes(Number bytes) {
+        bytes < 0 ? 'n/a' : String.format('%.1f MB', bytes.doubleValue() / (1024 * 1024))
+    }
+}
@@ -1,28 +1,47 @@
 package org.scoverage
 
-import org.apache.commons.io.FileUtils
 import org.gradle.api.Plugin
 import org.gradle.api.Project
 import org.gradle.api.Task
+import org.gradle.api.artifacts.Configuration
+import org.gradle.api.artifacts.ModuleVersionIdentifier
+import org.gradle.api.artifacts.type.ArtifactTypeDefinition
+import org.gradle.api.attributes.AttributeContainer
+import org.gradle.api.attributes.Category
+import org.gradle.api.attributes.Usage
+import org.gradle.api.attributes.VerificationType
 import org.gradle.api.invocation.Gradle
 import org.gradle.api.plugins.PluginAware
-import org.gradle.api.plugins.scala.ScalaPlugin
+import org.gradle.api.provider.Provider
 import org.gradle.api.tasks.SourceSet
 import org.gradle.api.tasks.TaskProvider
+import org.gradle.api.tasks.scala.ScalaCompile
 import org.gradle.api.tasks.testing.Test
 
-import java.nio.file.Files
 import java.util.concurrent.ConcurrentHashMap
 
-import static groovy.io.FileType.FILES
-
 class ScoveragePlugin implements Plugin<PluginAware> {
 
     static final String CONFIGURATION_NAME = 'scoverage'
     static final String REPORT_NAME = 'reportScoverage'
     static final String CHECK_NAME = 'checkScoverage'
     static final String COMPILE_NAME = 'compileScoverageScala'
+    static final String PRUNE_NAME = 'pruneScoverageClasses'
     static final String AGGREGATE_NAME = 'aggregateScoverage'
+    static final String MERGE_NAME = 'mergeScoverageData'
+    static final String MERGED_DATA_DIR = 'scoverage-merged'
+    static final String AGGREGATION_CONFIGURATION_NAME = 'scoverageAggregation'
+    static final String SUBPROJECTS_CONFIGURATION_NAME = 'scoverageSubprojects'
+    static final String SCALA_SUBPROJECTS_CONFIGURATION_NAME = 'scoverageScalaSubprojects'
+    static final String AGGREGATED_DATA_NAME = 'scoverageAggregatedData'
+    static final String AGGREGATED_SOURCES_NAME = 'scoverageAggregatedSources'
+    static final String AGGREGATED_REPORTS_NAME = 'scoverageAggregatedReports'
+    static final String DATA_ELEMENTS_NAME = 'scoverageDataElements'
+    static final String SOURCE_ELEMENTS_NAME = 'scoverageSourceElements'
+    static final String REPORT_ELEMENTS_NAME = 'scoverageReportElements'
+    static final String DATA_VERIFICATION_TYPE = 'scoverage-data'
+    static final String SOURCES_VERIFICATION_TYPE = 'scoverage-sources'
+    static final String REPORT_VERIFICATION_TYPE = 'scoverage-report'
     static final String DEFAULT_SCALA_VERSION = '2.13.14'
     static final String SCOVERAGE_COMPILE_ONLY_PROPERTY = 'scoverageCompileOnly';
 
@@ -31,6 +50,9 @@ class ScoveragePlugin implements Plugin<PluginAware> {
     private final ConcurrentHashMap<Task, Set<? extends Task>> crossProjectTaskDependencies = new ConcurrentHashMap<>()
     private final ConcurrentHashMap<Task, Set<? extends Task>> sameProjectTaskDependencies = new ConcurrentHashMap<>()
 
+    /** the scala version of the project the plugin is applied to, once detected */
+    private ScalaVersion scalaVersion
+
     @Override
     void apply(PluginAware pluginAware) {
         if (pluginAware instanceof Project) {
@@ -87,81 +109,158 @@ class ScoveragePlugin implements Plugin<PluginAware> {
 
     private void createTasks(Project project, ScoverageExtension extension) {
 
-        ScoverageRunner scoverageRunner = new ScoverageRunner(project.configurations.scoverage)
+        def reporterClassLoaders = ReporterClassLoaderService.register(project)
+        def reporterKey = project.provider {
+            "${extension.scoverageVersion.get()}_${resolveScalaVersions(project).scalacScoverageVersion}".toString()
+        }
+        ScoverageRunner scoverageRunner = new ScoverageRunner(project.configurations.scoverage, extension.reportMaxHeapSize,
+                reporterClassLoaders, reporterKey, extension.aggregationParallelism)
 
         def originalSourceSet = project.sourceSets.getByName(SourceSet.MAIN_SOURCE_SET_NAME)
         def instrumentedSourceSet = project.sourceSets.create('scoverage') {
 
-            resources.source(originalSourceSet.resources)
-            java.source(originalSourceSet.java)
             scala.source(originalSourceSet.scala)
 
             annotationProcessorPath += originalSourceSet.annotationProcessorPath + project.configurations.scoverage
             compileClasspath += originalSourceSet.compileClasspath + project.configurations.scoverage
             runtimeClasspath = it.output + project.configurations.scoverage + originalSourceSet.runtimeClasspath
+
+            // the classes which are actually instrumented are collected in build/classes/scala/scoverage
+            scala.destinationDirectory.set(project.layout.buildDirectory.dir('classes/scala/scoverage-compiled'))
         }
 
-        def originalCompileTask = project.tasks[originalSourceSet.getCompileTaskName("scala")]
-        def originalJarTask = project.tasks[originalSourceSet.getJarTaskName()]
+        def originalCompileTask = project.tasks.named(originalSourceSet.getCompileTaskName("scala"), ScalaCompile)
+        def originalJarTask = project.tasks.named(originalSourceSet.getJarTaskName())
+
+        def compileTask = project.tasks.named(instrumentedSourceSet.getCompileTaskName("scala"), ScalaCompile)
 
-        def compileTask = project.tasks[instrumentedSourceSet.getCompileTaskName("scala")]
-        compileTask.mustRunAfter(originalCompileTask)
+        // leaves out the classes which scoverage did not instrument, once both compilations are done
+        def pruneTask = project.tasks.register(PRUNE_NAME, ScoveragePrune) {
+            dependsOn originalCompileTask, compileTask
+            originalClassesDir.set(originalCompileTask.flatMap { it.destinationDirectory }.map { it.asFile })
+            instrumentedClassesDir.set(compileTask.flatMap { it.destinationDirectory }.map { it.asFile })
+            destinationDir.set(project.layout.buildDirectory.dir('classes/scala/scoverage').map { it.asFile })
+        }
 
         def globalReportTask = project.tasks.register(REPORT_NAME, ScoverageAggregate)
-        def globalCheckTask = project.tasks.register(CHECK_NAME)
+        def globalCheckTask = project.tasks.register(CHECK_NAME, ScoverageCheck)
 
-        project.afterEvaluate {
-            def detectedSourceEncoding = compileTask.scalaCompileOptions.encoding
-            if (detectedSourceEncoding == null) {
-                detectedSourceEncoding = "UTF-8"
+        [ScoverageReport, ScoverageAggregate, ScoverageCheck, ScoverageMerge].each { type ->
+            project.tasks.withType(type).configureEach {
+                usesService(reporterClassLoaders)
+            }
+        }
+
+        def metricsService = ScoverageMetricsService.registerIfEnabled(project)
+        if (metricsService) {
+            [ScoverageReport, ScoverageAggregate, ScoverageCheck, ScoverageMerge, ScoveragePrune, ScoverageTestClasses].each { type ->
+                project.tasks.withType(type).configureEach {
+                    usesService(metricsService)
+                    it.metricsService.set(metricsService)
+                }
+            }
+            compileTask.configure {
+                usesService(metricsService)
             }
+        }
+
+        project.tasks.withType(Test).configureEach {
+            mustRunAfter(compileTask, pruneTask)
+        }
+
+        project.tasks.withType(ScoverageReport).configureEach {
+            sourceRoot.convention(project.rootDir)
+        }
+        project.tasks.withType(ScoverageAggregate).configureEach {
+            sourceRoot.convention(project.rootDir)
+            dirsToAggregateFrom.convention(extension.dataDir.map { [it] })
+        }
+        project.tasks.withType(ScoverageMerge).configureEach {
+            sourceRoot.convention(project.rootDir)
+        }
+
+        // the task actions below only capture providers and files, so that they can be stored in the configuration cache
+        def dataDir = extension.dataDir
 
-            // calling toList() on TaskCollection is required
-            // to avoid potential ConcurrentModificationException in multi-project builds
-            def testTasks = project.tasks.withType(Test).toList()
+        project.afterEvaluate {
+            if (extension.reuseJavaAndResources.get()) {
+                // only the scala sources are instrumented, the java classes and resources of main are used as they are
+                instrumentedSourceSet.compileClasspath += project.files(originalSourceSet.java.classesDirectory)
+            } else {
+                instrumentedSourceSet.java.source(originalSourceSet.java)
+                instrumentedSourceSet.resources.source(originalSourceSet.resources)
+            }
 
-            List<ScoverageReport> reportTasks = testTasks.collect { testTask ->
-                testTask.mustRunAfter(compileTask)
+            def detectedSourceEncoding = compileTask.map { it.scalaCompileOptions.encoding ?: "UTF-8" }
+
+            // only the names are needed here, so that no test task is realized unless it is going to run
+            def testTaskNames = project.tasks.withType(Test).names.toList()
+            def testTasks = testTaskNames.collect { project.tasks.named(it, Test) }
+
+            // each test task runs with its own rewrite of the instrumented classes, writing to its own measurement directory
+            Map<String, TaskProvider<ScoverageTestClasses>> testClassesTasks = testTasks.collectEntries { testTask ->
+                def testTaskName = testTask.name
+                [(testTaskName): project.tasks.register("${testTaskName}ScoverageClasses", ScoverageTestClasses) {
+                    classesDir.set(pruneTask.flatMap { it.destinationDir })
+                    dataDir.set(extension.dataDir.map { it.absolutePath })
+                    measurementDir.set(extension.dataDir.map { TestMeasurements.taskDir(it, testTaskName).absolutePath })
+                    destinationDir.set(project.layout.buildDirectory.dir("classes/scala/scoverage-${testTaskName}").map { it.asFile })
+                }]
+            }
 
+            List<TaskProvider<ScoverageReport>> reportTasks = testTasks.collect { testTask ->
                 def reportTaskName = "report${testTask.name.capitalize()}Scoverage"
-                def taskReportDir = project.file("${project.buildDir}/reports/scoverage${testTask.name.capitalize()}")
+                def taskReportDir = project.layout.buildDirectory.dir("reports/scoverage${testTask.name.capitalize()}").map { it.asFile }
 
-                project.tasks.create(reportTaskName, ScoverageReport) {
-                    dependsOn originalJarTask, compileTask, testTask
-                    onlyIf { extension.dataDir.get().list() }
+                def testTaskName = testTask.name
+
+                project.tasks.register(reportTaskName, ScoverageReport) {
+                    dependsOn originalJarTask, compileTask, pruneTask, testTask
+                    onlyIf { ScoverageReport task -> task.dataDir.get().list() }
                     group = 'verification'
                     runner = scoverageRunner
                     reportDir = taskReportDir
                     sources = originalSourceSet.scala.getSourceDirectories()
-                    dataDir = extension.dataDir
+                    // only the measurements of the test task
+                    dataDir = extension.dataDir.map { TestMeasurements.taskDir(it, testTaskName) }
                     sourceEncoding.set(detectedSourceEncoding)
                     coverageOutputCobertura = extension.coverageOutputCobertura
                     coverageOutputXML = extension.coverageOutputXML
                     coverageOutputHTML = extension.coverageOutputHTML
                     coverageDebug = extension.coverageDebug
+                    incrementalHtml = extension.incrementalHtmlReport
                 }
             }
 
-            globalReportTask.configure {
-                def dataDirs = reportTasks.findResults { it.dataDir.get() }
+            def dataTasks = [compileTask, pruneTask] + testTasks
+            def aggregateWithoutReports = extension.aggregateWithoutReports.get()
 
-                dependsOn reportTasks
-                onlyIf { dataDirs.any { it.list() } }
+            globalReportTask.configure {
+                if (aggregateWithoutReports) {
+                    // only the tasks producing the coverage data are needed, the test tasks are not reported on their own
+                    dependsOn dataTasks
+                } else {
+                    dependsOn reportTasks
+                }
+                onlyIf { ScoverageAggregate task -> task.dirsToAggregateFrom.get().any { it.list() } }
 
                 group = 'verification'
                 runner = scoverageRunner
                 reportDir = extension.reportDir
                 sources = originalSourceSet.scala.getSourceDirectories()
-                dirsToAggregateFrom = dataDirs
+                // the data directory has the measurements of all the test tasks; aggregating the directories of
+                // the test tasks instead would duplicate the statements they share
+                dirsToAggregateFrom.set(extension.dataDir.map { [it] })
                 sourceEncoding.set(detectedSourceEncoding)
                 deleteReportsOnAggregation = false
                 coverageOutputCobertura = extension.coverageOutputCobertura
                 coverageOutputXML = extension.coverageOutputXML
                 coverageOutputHTML = extension.coverageOutputHTML
                 coverageDebug = extension.coverageDebug
+                incrementalHtml = extension.incrementalHtmlReport
             }
 
-            configureCheckTask(project, extension, globalCheckTask, globalReportTask)
+            configureCheckTask(project, extension, scoverageRunner, globalCheckTask, globalReportTask, dataTasks)
 
             compileTask.configure {
                 List<String> parameters = []
@@ -189,20 +288,21 @@ class ScoveragePlugin implements Plugin<PluginAware> {
                     // the compile task creates a store of measured statements
                     outputs.file(new File(extension.dataDir.get(), 'scoverage.coverage'))
 
-                    dependsOn project.configurations[CONFIGURATION_NAME]
-                    doFirst {
+                    def scoverageClasspath = project.configurations[CONFIGURATION_NAME]
+                    dependsOn scoverageClasspath
+                    doFirst { ScalaCompile task ->
                         /*
                             It is crucial that this would run in `doFirst`, as this resolves the (dependencies of the)
                             configuration, which we do not want to do at configuration time (but only at execution time).
                          */
-                        def pluginFiles = project.configurations[CONFIGURATION_NAME].findAll {
+                        def pluginFiles = scoverageClasspath.findAll {
                             it.name.startsWith("scalac-scoverage-plugin") ||
                             it.name.startsWith("scalac-scoverage-domain") ||
                             it.name.startsWith("scalac-scoverage-serializer")
                         }.collect {
                             it.absolutePath
                         }
-                        scalaCompileOptions.additionalParameters.add('-Xplugin:' + pluginFiles.join(File.pathSeparator))
+                        task.scalaCompileOptions.additionalParameters.add('-Xplugin:' + pluginFiles.join(File.pathSeparator))
                     }
                 } else {
                     parameters.add("-sourceroot:${project.rootDir.absolutePath}".toString())
@@ -220,121 +320,296 @@ class ScoveragePlugin implements Plugin<PluginAware> {
             }
 
             compileTask.configure {
-                doFirst {
-                    destinationDirectory.get().getAsFile().deleteDir()
+                def incrementalCompile = extension.incrementalCompile
+                def sourceRoot = project.rootDir
+
+                doFirst { ScalaCompile task ->
+                    // the measurements of the test tasks refer to the statements of the previous compilation
+                    TestMeasurements.deleteTaskDirs(dataDir.get(), testTaskNames)
+
+                    def stateDir = new File(task.temporaryDir, 'incremental')
+                    if (incrementalCompile.get()) {
+                        new IncrementalInstrumentation(task.logger, dataDir.get(), task.destinationDirectory.get().asFile,
+                                sourceRoot, stateDir).beforeCompile()
+                    } else {
+                        task.destinationDirectory.get().getAsFile().deleteDir()
+                        stateDir.deleteDir()
+                    }
                 }
 
-                // delete non-instrumented classes by comparing normally compiled classes to those compiled with scoverage
-                doLast {
-                    project.logger.info("Deleting classes compiled by scoverage but non-instrumented (identical to normal compilation)")
-                    def originalCompileTaskName = project.sourceSets.getByName(SourceSet.MAIN_SOURCE_SET_NAME)
-                            .getCompileTaskName("scala")
-                    def originalDestinationDirectory = project.tasks[originalCompileTaskName].destinationDirectory
-                    def originalDestinationDir = originalDestinationDirectory.get().asFile
-                    def destinationDir = destinationDirectory.get().asFile
-
-
-                    def findFiles = { File dir, Closure<Boolean> condition = null ->
-                        def files = []
-
-                        if (dir.exists()) {
-                            dir.eachFileRecurse(FILES) { f ->
-                                if (condition == null || condition(f)) {
-                                    def relativePath = dir.relativePath(f)
-                                    files << relativePath
-                                }
-                            }
-                        }
-
-                        files
-                    }
+                def compileMetricsFile = project.layout.buildDirectory.file("reports/scoverage-metrics/${name}.json")
 
-                    def isSameFile = { String relativePath ->
-                        def fileA = new File(originalDestinationDir, relativePath)
-                        def fileB = new File(destinationDir, relativePath)
-                        FileUtils.contentEquals(fileA, fileB)
+                doLast { ScalaCompile task ->
+                    if (!incrementalCompile.get()) {
+                        return
                     }
-
-                    def originalClasses = findFiles(originalDestinationDir)
-                    def identicalInstrumentedClasses = findFiles(destinationDir, { f ->
-                        def relativePath = destinationDir.relativePath(f)
-                        originalClasses.contains(relativePath) && isSameFile(relativePath)
-                    })
-
-                    identicalInstrumentedClasses.each { f ->
-                        Files.deleteIfExists(destinationDir.toPath().resolve(f))
+                    def metricsFile = compileMetricsFile.get().asFile
+                    metricsService?.get()?.register(metricsFile)
+                    def metrics = new ScoverageMetrics(task.path)
+                    def merging = metrics.start('merge')
+                    try {
+                        def merged = new IncrementalInstrumentation(task.logger, dataDir.get(),
+                                task.destinationDirectory.get().asFile, sourceRoot,
+                                new File(task.temporaryDir, 'incremental')).afterCompile()
+                        merging.statements(merged[0]).files(merged[1])
+                    } finally {
+                        merging.end()
+                        metrics.write(metricsFile)
                     }
                 }
             }
 
+            def reportTaskPaths = reportTasks.collect { project.absoluteProjectPath(it.name) } +
+                    project.absoluteProjectPath(REPORT_NAME)
+            // the aggregations and merges (of this project or its parents) may read the coverage data without any report of it
+            for (def aggregating = project; aggregating != null; aggregating = aggregating.parent) {
+                reportTaskPaths << aggregating.absoluteProjectPath(AGGREGATE_NAME)
+                reportTaskPaths << aggregating.absoluteProjectPath(MERGE_NAME)
+            }
             project.gradle.taskGraph.whenReady { graph ->
-                def hasAnyReportTask = reportTasks.any { graph.hasTask(it) }
+                def hasAnyReportTask = reportTaskPaths.any { graph.hasTask(it) } ||
+                        (extension.checkWithoutReports.get() && graph.hasTask(project.absoluteProjectPath(CHECK_NAME)))
 
                 if (hasAnyReportTask) {
-                    project.tasks.withType(Test).each { testTask ->
+                    project.tasks.withType(Test).configureEach { testTask ->
                         testTask.configure {
                             project.logger.info("Adding instrumented classes to '${path}' classpath")
 
-                            classpath = project.configurations.scoverage + instrumentedSourceSet.output + classpath
+                            def testTaskName = name
+                            def testClassesTask = testClassesTasks[testTaskName]
+                            if (testClassesTask == null) {
+                                // a test task registered too late to have its own classes writes to the data directory
+                                classpath = project.configurations.scoverage + project.files(pruneTask) +
+                                        instrumentedSourceSet.output.minus(project.files(compileTask.flatMap { it.destinationDirectory })) +
+                                        classpath
+                                return
+                            }
+
+                            // the rewritten classes come first, the others are read from the instrumented classes
+                            classpath = project.configurations.scoverage + project.files(testClassesTask) +
+                                    project.files(pruneTask) + instrumentedSourceSet.output.minus(project.files(compileTask.flatMap { it.destinationDirectory })) +
+                                    classpath
 
+                            // restored along with the test results, the measurements match the classes they were run with
+                            outputs.dir(dataDir.map { TestMeasurements.taskDir(it, testTaskName) })
                             outputs.upToDateWhen {
-                                extension.dataDir.get().listFiles(new FilenameFilter() {
-                                    @Override
-                                    boolean accept(File dir, String name) {
-                                        name.startsWith("scoverage.measurements.")
-                                    }
-                                })
+                                new TestMeasurements(dataDir.get(), testTaskName).exist()
+                            }
+                            doFirst { Test task ->
+                                new TestMeasurements(dataDir.get(), task.name).beforeTest()
+                            }
+                            doLast { Test task ->
+                                def measurements = new TestMeasurements(dataDir.get(), task.name)
+                                def count = measurements.afterTest()
+                                task.logger.info("Attributed ${count} measurement files to '${task.path}' in ${measurements.taskDir}")
                             }
                         }
                     }
                 }
             }
 
+            configureVariants(project, extension, originalSourceSet, dataTasks, globalReportTask)
+
             // define aggregation task
             if (!project.subprojects.empty) {
-                project.gradle.projectsEvaluated {
-                    project.subprojects.each {
-                        if (it.plugins.hasPlugin(ScalaPlugin) && !it.plugins.hasPlugin(ScoveragePlugin)) {
-                            it.logger.warn("Scala sub-project '${it.name}' doesn't have Scoverage applied and will be ignored in parent project aggregation")
-                        }
+                // each level of the tree only resolves the variants of the level below it, which are those of the
+                // nearest sub-projects with scoverage, the sources and reports of the levels further down coming
+                // through the dependencies of their variants
+                def childData = aggregatedConfiguration(project, AGGREGATED_DATA_NAME, DATA_VERIFICATION_TYPE)
+                def childSources = aggregatedConfiguration(project, AGGREGATED_SOURCES_NAME, SOURCES_VERIFICATION_TYPE)
+                def childReports = aggregatedConfiguration(project, AGGREGATED_REPORTS_NAME, REPORT_VERIFICATION_TYPE)
+                def childDataFiles = childData.incoming.files
+
+                // the data of this project is merged with the merged data of each nearest sub-project with
+                // scoverage, so that each level of the tree only reads the data of the level below it
+                def mergeTask = project.tasks.register(MERGE_NAME, ScoverageMerge) {
+                    dependsOn(dataTasks, childDataFiles)
+                    runner = scoverageRunner
+                    dirsToMerge.add(extension.dataDir)
+                    dirsToMerge.addAll(childDataFiles.elements.map { it*.asFile })
+                    coverageFile.set(mergedDataDir(project).map { new File(it, 'scoverage.coverage') })
+                }
+                def aggregationTask = project.tasks.register(AGGREGATE_NAME, ScoverageAggregate) {
+                    onlyIf {
+                        !childDataFiles.empty
                     }
-                    def childReportTasks = project.subprojects.findResults {
-                        it.tasks.find { task ->
-                            task.name == REPORT_NAME && task instanceof ScoverageAggregate
-                        }
+                    // the merge only needs the tasks producing the coverage data of all the projects
+                    dependsOn(mergeTask)
+                    if (!aggregateWithoutReports) {
+                        dependsOn(globalReportTask, childReports.incoming.files)
                     }
-                    def allReportTasks = childReportTasks + globalReportTask.get()
-                    def allSources = project.objects.fileCollection()
-                    allReportTasks.each {
-                        allSources = allSources.plus(it.sources.get())
+                    group = 'verification'
+                    runner = scoverageRunner
+                    reportDir = extension.reportDir
+                    sources = project.files(originalSourceSet.scala.sourceDirectories, childSources.incoming.files)
+                    sourceEncoding.set(detectedSourceEncoding)
+                    dirsToAggregateFrom.set(mergeTask.flatMap { it.mergedDataDir }.map { [it] })
+                    deleteReportsOnAggregation = extension.deleteReportsOnAggregation
+                    coverageOutputCobertura = extension.coverageOutputCobertura
+                    coverageOutputXML = extension.coverageOutputXML
+                    coverageOutputHTML = extension.coverageOutputHTML
+                    coverageDebug = extension.coverageDebug
+                    incrementalHtml = extension.incrementalHtmlReport
+                }
+                globalCheckTask.configure {
+                    mustRunAfter(aggregationTask)
+                }
+
+                def scalaSubprojects = scalaSubprojects(project)
+                project.gradle.taskGraph.whenReady { graph ->
+                    if (graph.hasTask(project.absoluteProjectPath(MERGE_NAME))) {
+                        def subprojects = project.configurations.getByName(SUBPROJECTS_CONFIGURATION_NAME)
+                        def withScoverage = ScoverageProjects.resolvedPaths(subprojects.incoming.resolutionResult.root)
+                        ScoverageProjects.resolvedPaths(scalaSubprojects.incoming.resolutionResult.root).findAll { path ->
+                            !withScoverage.any { it == path || ScoverageProjects.isAncestor(it, path) }
+                        }.sort().each { path ->
+                            def name = path.substring(path.lastIndexOf(':') + 1)
+                            project.logger.warn("Scala sub-project '${name}' doesn't have Scoverage applied and will be ignored in parent project aggregation")
+                        }
                     }
-                    def aggregationTask = project.tasks.create(AGGREGATE_NAME, ScoverageAggregate) {
-                        def dataDirs = allReportTasks.findResults { it.dirsToAggregateFrom.get() }.flatten()
-                        onlyIf {
-                            !childReportTasks.empty
+                }
+                project.gradle.taskGraph.whenReady { graph ->
+                    if (graph.hasTask(project.absoluteProjectPath(AGGREGATE_NAME))) {
+                        // a check straight from the coverage data applies to the aggregated data
+                        globalCheckTask.configure {
+                            dataDirs.set(aggregationTask.flatMap { it.dirsToAggregateFrom })
                         }
-                        dependsOn(allReportTasks)
-                        group = 'verification'
-                        runner = scoverageRunner
-                        reportDir = extension.reportDir
-                        sources = allSources
-                        sourceEncoding.set(detectedSourceEncoding)
-                        dirsToAggregateFrom = dataDirs
-                        deleteReportsOnAggregation = extension.deleteReportsOnAggregation
-                        coverageOutputCobertura = extension.coverageOutputCobertura
-                        coverageOutputXML = extension.coverageOutputXML
-                        coverageOutputHTML = extension.coverageOutputHTML
-                        coverageDebug = extension.coverageDebug
                     }
-                    project.tasks[CHECK_NAME].mustRunAfter(aggregationTask)
                 }
             }
         }
     }
 
+    /**
+     * Publishes the coverage data, the sources and the report of the project as variants, which the aggregating
+     * projects resolve instead of looking up the tasks of their sub-projects. The data is that of the project, or
+     * once merged with that of its sub-projects when it has any. The sources and reports variants depend on those of
+     * the nearest sub-projects with scoverage, so that they are resolved along the whole tree.
+     */
+    private static void configureVariants(Project project, ScoverageExtension extension, SourceSet originalSourceSet,
+                                          List<TaskProvider<? extends Task>> dataTasks,
+                                          TaskProvider<ScoverageAggregate> globalReportTask) {
+        def aggregation = project.configurations.create(AGGREGATION_CONFIGURATION_NAME) {
+            visible = false
+            description = 'Nearest sub-projects with scoverage, whose coverage is aggregated'
+            canBeResolved = false
+            canBeConsumed = false
+        }
+        // only the projects the plugin is applied to publish the variants, so the coverage data is looked up in every
+        // sub-project, and those it resolves for tell the nearest sub-projects to aggregate
+        def subprojects = project.configurations.create(SUBPROJECTS_CONFIGURATION_NAME) {
+            visible = false
+            description = 'Sub-projects looked up for the scoverage coverage data'
+            canBeResolved = true
+            canBeConsumed = false
+            attributes { verificationType(project, it, DATA_VERIFICATION_TYPE) }
+        }
+        project.subprojects.each {
+            subprojects.dependencies.add(project.dependencies.project(path: it.path))
+        }
+        aggregation.dependencies.addAllLater(subprojects.incoming.resolutionResult.rootComponent.map { root ->
+            ScoverageProjects.nearestDescendants(project.path, ScoverageProjects.resolvedPaths(root)).collect {
+                project.dependencies.project(path: it)
+            }
+        })
+
+        project.configurations.create(DATA_ELEMENTS_NAME) {
+            visible = false
+            description = 'Scoverage coverage data'
+            canBeResolved = false
+            canBeConsumed = true
+            attributes { verificationType(project, it, DATA_VERIFICATION_TYPE) }
+            if (project.subprojects.empty) {
+                outgoing.artifact(extension.dataDir) {
+                    type = ArtifactTypeDefinition.DIRECTORY_TYPE
+                    builtBy(dataTasks)
+                }
+            } else {
+                outgoing.artifact(mergedDataDir(project)) {
+                    type = ArtifactTypeDefinition.DIRECTORY_TYPE
+                    builtBy(MERGE_NAME)
+                }
+            }
+        }
+        project.configurations.create(SOURCE_ELEMENTS_NAME) {
+            visible = false
+            description = 'Scoverage instrumented sources'
+            canBeResolved = false
+            canBeConsumed = true
+            extendsFrom(aggregation)
+            attributes { verificationType(project, it, SOURCES_VERIFICATION_TYPE) }
+            originalSourceSet.scala.srcDirs.each { sourceDir ->
+                outgoing.artifact(sourceDir) {
+                    type = ArtifactTypeDefinition.DIRECTORY_TYPE
+                }
+            }
+        }
+        project.configurations.create(REPORT_ELEMENTS_NAME) {
+            visible = false
+            description = 'Scoverage report'
+            canBeResolved = false
+            canBeConsumed = true
+            extendsFrom(aggregation)
+            attributes { verificationType(project, it, REPORT_VERIFICATION_TYPE) }
+            outgoing.artifact(extension.reportDir) {
+                type = ArtifactTypeDefinition.DIRECTORY_TYPE
+                builtBy(globalReportTask)
+            }
+        }
+    }
+
+    private static void verificationType(Project project, AttributeContainer attributes, String type) {
+        attributes.attribute(Category.CATEGORY_ATTRIBUTE, project.objects.named(Category, Category.VERIFICATION))
+        attributes.attribute(VerificationType.VERIFICATION_TYPE_ATTRIBUTE, project.objects.named(VerificationType, type))
+    }
+
+    /**
+     * @return a configuration resolving for the Scala sub-projects only, through the incremental analysis variant
+     * the Scala plugin publishes
+     */
+    private static Configuration scalaSubprojects(Project project) {
+        def configuration = project.configurations.create(SCALA_SUBPROJECTS_CONFIGURATION_NAME) {
+            visible = false
+            description = 'Sub-projects looked up for the Scala incremental analysis'
+            canBeResolved = true
+            canBeConsumed = false
+            attributes {
+                it.attribute(Category.CATEGORY_ATTRIBUTE, project.objects.named(Category, 'scala-analysis'))
+                it.attribute(Usage.USAGE_ATTRIBUTE, project.objects.named(Usage, 'incremental-analysis'))
+            }
+        }
+        project.subprojects.each {
+            configuration.dependencies.add(project.dependencies.project(path: it.path))
+        }
+        configuration
+    }
+
+    /**
+     * @return a configuration resolving the given variant of the nearest sub-projects with scoverage
+     */
+    private static Configuration aggregatedConfiguration(Project project, String name, String type) {
+        project.configurations.create(name) {
+            visible = false
+            description = "Scoverage ${type} of the nearest sub-projects"
+            canBeResolved = true
+            canBeConsumed = false
+            extendsFrom(project.configurations.getByName(AGGREGATION_CONFIGURATION_NAME))
+            attributes { verificationType(project, it, type) }
+        }
+    }
+
+    /**
+     * @return the directory where the coverage data of the project and of its sub-projects is merged
+     */
+    private static Provider<File> mergedDataDir(Project project) {
+        project.layout.buildDirectory.dir(MERGED_DATA_DIR).map { it.asFile }
+    }
+
     private void configureCheckTask(Project project, ScoverageExtension extension,
-                                    TaskProvider<Task> globalCheckTask,
-                                    TaskProvider<ScoverageAggregate> globalReportTask) {
+                                    ScoverageRunner scoverageRunner,
+                                    TaskProvider<ScoverageCheck> globalCheckTask,
+                                    TaskProvider<ScoverageAggregate> globalReportTask,
+                                    List<TaskProvider<? extends Task>> dataTasks) {
 
         if (extension.checks.isEmpty()) {
             extension.check {
@@ -345,24 +620,48 @@ class ScoveragePlugin implements Plugin<PluginAware> {
             throw new IllegalArgumentException("Check configuration should be defined in either the new or the old syntax exclusively, not together")
         }
 
-        def checker = new CoverageChecker(project.logger)
+        // the rates are computed from the coverage data when a check needs a report that is not written
+        def reportsEnabled = [
+                (CoverageType.Line)     : extension.coverageOutputCobertura.get(),
+                (CoverageType.Statement): extension.coverageOutputXML.get(),
+                (CoverageType.Branch)   : extension.coverageOutputXML.get()
+        ]
+        def withoutReports = extension.checkWithoutReports.get()
+        def checkReports = !withoutReports && extension.checks.every { reportsEnabled[it.coverageType] }
 
         globalCheckTask.configure {
             group = 'verification'
-            dependsOn globalReportTask
-            onlyIf { extension.reportDir.get().list() }
-        }
-
-        extension.checks.each { config ->
-            globalCheckTask.configure {
-                doLast {
-                    checker.checkLineCoverage(extension.reportDir.get(), config.coverageType, config.minimumRate.doubleValue())
-                }
+            if (withoutReports) {
+                // only the tasks producing the coverage data are needed, no report is written
+                dependsOn dataTasks
+            } else {
+                dependsOn globalReportTask
+            }
+            runner = scoverageRunner
+            checks.set(extension.checks)
+            fromReports.set(checkReports)
+            reportDir.set(extension.reportDir)
+            dataDirs.set(globalReportTask.flatMap { it.dirsToAggregateFrom })
+            sourceRoot.set(project.rootDir)
+            if (checkReports) {
+                onlyIf { ScoverageCheck task -> task.reportDir.get().list() }
+            } else {
+                onlyIf { ScoverageCheck task -> task.dataDirs.get().any { it.list() } }
             }
         }
     }
 
+    /**
+     * The scala version of the project, detected once (on first use), as detecting it resolves the compile classpath.
+     */
     private ScalaVersion resolveScalaVersions(Project project) {
+        if (scalaVersion == null) {
+            scalaVersion = detectScalaVersion(project)
+        }
+        return scalaVersion
+    }
+
+    private static ScalaVersion detectScalaVersion(Project project) {
         def scalaVersionProperty = project.extensions.scoverage.scoverageScalaVersion
         if (scalaVersionProperty.isPresent()) {
             def configuredScalaVersion = scalaVersionProperty.get()
@@ -372,24 +671,30 @@ class ScoveragePlugin implements Plugin<PluginAware> {
             project.logger.info("No Scala version configured. Detecting scala library...")
             def components = project.configurations.compileClasspath.incoming.resolutionResult.getAllComponents()
 
-            def scala3Library = components.find {
-                it.moduleVersion.group == "org.scala-lang" && it.moduleVersion.name == "scala3-library_3"
-            }
-            def scalaLibrary = components.find {
-                it.moduleVersion.group == "org.scala-lang" && it.moduleVersion.name == "scala-library"
+            ModuleVersionIdentifier scala3Library = null
+            ModuleVersionIdentifier scalaLibrary = null
+            for (component in components) {
+                def module = component.moduleVersion
+                if (module?.group == "org.scala-lang") {
+                    if (module.name == "scala3-library_3") {
+                        scala3Library = module
+                    } else if (module.name == "scala-library") {
+                        scalaLibrary = module
+                    }
+                }
             }
 
             // Scala 3
             if (scala3Library != null) {
-                def scala3Version = scala3Library.moduleVersion.version
-                def scala2Version = scalaLibrary.moduleVersion.version
+                def scala3Version = scala3Library.version
+                def scala2Version = scalaLibrary.version
                 project.logger.info("Detected scala 3 library in compilation classpath. Scala 3 version: $scala3Version; using Scala 2 library: $scala2Version")
                 return new ScalaVersion(scala3Version, Optional.of(scala2Version))
             }
 
             // Scala 2
             if (scalaLibrary != null) {
-                def scala2Version = scalaLibrary.moduleVersion.version
+                def scala2Version = scalaLibrary.version
                 project.logger.info("Detected scala library in compilation classpath. Scala version: $scala2Version")
                 return new ScalaVersion(scala2Version)
             }
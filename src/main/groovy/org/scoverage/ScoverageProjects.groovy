@@ -0,0 +1,41 @@
+package org.scoverage
+
+import org.gradle.api.artifacts.component.ProjectComponentIdentifier
+import org.gradle.api.artifacts.result.ResolvedComponentResult
+import org.gradle.api.artifacts.result.ResolvedDependencyResult
+
+/**
+ * Finds the sub-projects the plugin is applied to from the resolution of a variant only these projects publish, so
+ * that an aggregating project depends on them without looking into the sub-projects themselves.
+ */
+class ScoverageProjects {
+
+    /**
+     * @return the paths of the projects the dependencies of the given root component were resolved to, those which
+     * do not publish the requested variant being left unresolved
+     */
+    static List<String> resolvedPaths(ResolvedComponentResult root) {
+        root.dependencies.findAll { it instanceof ResolvedDependencyResult }
+                .collect { ((ResolvedDependencyResult) it).selected.id }
+                .findAll { it instanceof ProjectComponentIdentifier }
+                .collect { ((ProjectComponentIdentifier) it).projectPath }
+    }
+
+    /**
+     * @return the paths of the nearest descendants of the given project among the given paths, looking through the
+     * projects which are not part of them
+     */
+    static List<String> nearestDescendants(String path, Collection<String> paths) {
+        def descendants = paths.findAll { isAncestor(path, it) }
+        descendants.findAll { descendant ->
+            !descendants.any { isAncestor(it, descendant) }
+        }.sort()
+    }
+
+    /**
+     * @return whether the project of the given path is a descendant of the given ancestor
+     */
+    static boolean isAncestor(String ancestor, String path) {
+        path != ancestor && path.startsWith(ancestor == ':' ? ancestor : "${ancestor}:")
+    }
+}
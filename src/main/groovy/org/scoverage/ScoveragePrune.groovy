@@ -0,0 +1,57 @@
+package org.scoverage
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.provider.Property
+import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.TaskAction
+
+import static org.gradle.api.tasks.PathSensitivity.RELATIVE
+
+/**
+ * Collects the classes compiled with scoverage which are actually instrumented, leaving out those identical to the
+ * normally compiled ones. Being separate from the compilations, it lets them run at the same time.
+ */
+class ScoveragePrune extends DefaultTask {
+
+    /** the normally compiled classes */
+    @InputFiles
+    @PathSensitive(RELATIVE)
+    final Property<File> originalClassesDir = project.objects.property(File)
+
+    /** the classes compiled with scoverage */
+    @InputFiles
+    @PathSensitive(RELATIVE)
+    final Property<File> instrumentedClassesDir = project.objects.property(File)
+
+    @OutputDirectory
+    final Property<File> destinationDir = project.objects.property(File)
+
+    /** where the metrics of the task's phases are written */
+    @Internal
+    final Property<File> metricsFile = project.objects.property(File)
+
+    /** collects the metrics for the summary at the end of the build, when one is requested */
+    @Internal
+    final Property<ScoverageMetricsService> metricsService = project.objects.property(ScoverageMetricsService)
+
+    ScoveragePrune() {
+        metricsFile.set(project.layout.buildDirectory.file("reports/scoverage-metrics/${name}.json").map { it.asFile })
+    }
+
+    @TaskAction
+    def prune() {
+        metricsService.getOrNull()?.register(metricsFile.get())
+        def metrics = new ScoverageMetrics(path)
+        def pruning = metrics.start('prune')
+        try {
+            pruning.files(new NonInstrumentedClassPruner(logger, new File(temporaryDir, 'original-classes.digests'))
+                    .prune(originalClassesDir.get(), instrumentedClassesDir.get(), destinationDir.get()))
+        } finally {
+            pruning.end()
+            metrics.write(metricsFile.get())
+        }
+    }
+}
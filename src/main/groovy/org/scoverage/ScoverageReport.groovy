@@ -5,13 +5,15 @@ import org.gradle.api.file.FileCollection
 import org.gradle.api.provider.Property
 import org.gradle.api.tasks.CacheableTask
 import org.gradle.api.tasks.Input
-import org.gradle.api.tasks.InputDirectory
 import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.Internal
 import org.gradle.api.tasks.Nested
 import org.gradle.api.tasks.OutputDirectory
 import org.gradle.api.tasks.PathSensitive
 import org.gradle.api.tasks.TaskAction
-import scoverage.reporter.CoverageAggregator
+import org.gradle.workers.WorkerExecutor
+
+import javax.inject.Inject
 
 import static org.gradle.api.tasks.PathSensitivity.RELATIVE
 
@@ -21,10 +23,16 @@ class ScoverageReport extends DefaultTask {
     @Nested
     ScoverageRunner runner
 
-    @InputDirectory
-    @PathSensitive(RELATIVE)
+    @Internal
     final Property<File> dataDir = project.objects.property(File)
 
+    /** the coverage data in {@link #dataDir}, which is what the report depends on (not the caches) */
+    @InputFiles
+    @PathSensitive(RELATIVE)
+    final FileCollection coverageDataFiles = project.files(dataDir).asFileTree.matching {
+        include 'scoverage.coverage', 'scoverage.measurements.*', 'scoverage.invoked', '*/scoverage.invoked'
+    }
+
     @InputFiles
     @PathSensitive(RELATIVE)
     final Property<FileCollection> sources = project.objects.property(FileCollection)
@@ -32,6 +40,10 @@ class ScoverageReport extends DefaultTask {
     @OutputDirectory
     final Property<File> reportDir = project.objects.property(File)
 
+    /** root against which the paths in the coverage data are resolved */
+    @Internal
+    final Property<File> sourceRoot = project.objects.property(File)
+
     @Input
     final Property<String> sourceEncoding = project.objects.property(String)
 
@@ -43,29 +55,44 @@ class ScoverageReport extends DefaultTask {
     final Property<Boolean> coverageOutputHTML = project.objects.property(Boolean)
     @Input
     final Property<Boolean> coverageDebug = project.objects.property(Boolean)
+    @Input
+    final Property<Boolean> incrementalHtml = project.objects.property(Boolean)
+
+    /** where the metrics of the task's phases are written */
+    @Internal
+    final Property<File> metricsFile = project.objects.property(File)
+
+    /** collects the metrics for the summary at the end of the build, when one is requested */
+    @Internal
+    final Property<ScoverageMetricsService> metricsService = project.objects.property(ScoverageMetricsService)
+
+    private final WorkerExecutor workerExecutor
+
+    @Inject
+    ScoverageReport(WorkerExecutor workerExecutor) {
+        this.workerExecutor = workerExecutor
+        metricsFile.set(project.layout.buildDirectory.file("reports/scoverage-metrics/${name}.json").map { it.asFile })
+    }
 
     @TaskAction
     def report() {
-        runner.run {
-            reportDir.get().delete()
-            reportDir.get().mkdirs()
-
-            def sourceRoot = getProject().getRootDir()
-            def coverage = CoverageAggregator.aggregate([dataDir.get()] as File[], sourceRoot)
-
-            if (coverage.isEmpty()) {
-                project.logger.info("[scoverage] Could not find coverage file, skipping...")
-            } else {
-                new ScoverageWriter(project.logger).write(
-                        sources.get().getFiles(),
-                        reportDir.get(),
-                        coverage.get(),
-                        sourceEncoding.get(),
-                        coverageOutputCobertura.get(),
-                        coverageOutputXML.get(),
-                        coverageOutputHTML.get(),
-                        coverageDebug.get())
-            }
+        metricsService.getOrNull()?.register(metricsFile.get())
+        runner.workQueue(workerExecutor).submit(ScoverageReportAction) { parameters ->
+            parameters.dataDirs.set([dataDir.get()])
+            parameters.cacheDir.set(new File(temporaryDir, 'coverage-cache'))
+            parameters.sourceRoot.set(sourceRoot)
+            parameters.sources.from(sources.get())
+            parameters.reportDir.set(reportDir.get())
+            parameters.cleanReportDir.set(false)
+            parameters.sourceEncoding.set(sourceEncoding.get())
+            parameters.coverageOutputCobertura.set(coverageOutputCobertura.get())
+            parameters.coverageOutputXML.set(coverageOutputXML.get())
+            parameters.coverageOutputHTML.set(coverageOutputHTML.get())
+            parameters.coverageDebug.set(coverageDebug.get())
+            parameters.incrementalHtml.set(incrementalHtml.get())
+            runner.configure(parameters)
+            parameters.taskPath.set(path)
+            parameters.metricsFile.set(metricsFile)
         }
     }
 }
@@ -0,0 +1,15 @@
+package org.scoverage
+
+import org.gradle.workers.WorkAction
+
+/**
+ * Aggregates coverage data and writes the reports.
+ * Runs through the worker API, within the shared classloader of the scoverage reporter (or a forked process).
+ */
+abstract class ScoverageReportAction implements WorkAction<ScoverageWorkParameters> {
+
+    @Override
+    void execute() {
+        ReporterClassLoaderService.run('report', ScoverageWorkParameters, parameters)
+    }
+}
@@ -0,0 +1,185 @@
+package org.scoverage
+
+import org.gradle.api.logging.Logger
+import org.gradle.api.logging.Logging
+import scoverage.domain.Coverage
+import scoverage.serialize.Serializer
+
+import java.math.RoundingMode
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+/**
+ * The work which needs the scoverage reporter: aggregating coverage data and writing reports, or checking it.
+ * Loaded by the {@link ReporterClassLoader} (or by the classloader of a forked worker), and run through
+ * {@link ReporterClassLoaderService#run}.
+ */
+class ScoverageReporter {
+
+    private static final Logger LOGGER = Logging.getLogger(ScoverageReporter)
+
+    /**
+     * Aggregates coverage data and writes the reports.
+     */
+    static void report(ScoverageWorkParameters parameters) {
+        def metrics = new ScoverageMetrics(parameters.taskPath.getOrElse(''))
+        try {
+            aggregateAndWrite(parameters, metrics)
+        } finally {
+            if (parameters.metricsFile.isPresent()) {
+                metrics.write(parameters.metricsFile.get())
+            }
+        }
+    }
+
+    /**
+     * Evaluates the checks against the aggregated coverage data, without any report being written.
+     */
+    static void check(ScoverageCheckParameters parameters) {
+        def metrics = new ScoverageMetrics(parameters.taskPath.getOrElse(''))
+        try {
+            aggregateAndCheck(parameters, metrics)
+        } finally {
+            if (parameters.metricsFile.isPresent()) {
+                metrics.write(parameters.metricsFile.get())
+            }
+        }
+    }
+
+    /**
+     * Merges coverage data into a single data directory, with the invocations in its coverage file.
+     */
+    static void merge(ScoverageMergeParameters parameters) {
+        def metrics = new ScoverageMetrics(parameters.taskPath.getOrElse(''))
+        try {
+            aggregateAndMerge(parameters, metrics)
+        } finally {
+            if (parameters.metricsFile.isPresent()) {
+                metrics.write(parameters.metricsFile.get())
+            }
+        }
+    }
+
+    private static void aggregateAndWrite(ScoverageWorkParameters parameters, ScoverageMetrics metrics) {
+        def reportDir = parameters.reportDir.get()
+        // an incremental HTML report is written again only where it changed, so it is not deleted
+        if (parameters.cleanReportDir.get() && !parameters.incrementalHtml.get()) {
+            reportDir.deleteDir()
+        } else {
+            reportDir.delete()
+        }
+        reportDir.mkdirs()
+
+        def dirs = parameters.dataDirs.get().unique()
+        def sourceRoot = parameters.sourceRoot.get()
+        def aggregation = metrics.start('aggregate').files(dirs.size())
+        def coverage = parameters.snapshotDir.isPresent()
+                ? new CoverageSnapshots(parameters.snapshotDir.get(), sourceRoot, parallelism(parameters), cacheDir(parameters))
+                        .aggregate(dirs, aggregation)
+                : CoverageData.aggregate(dirs, sourceRoot, parallelism(parameters), cacheDir(parameters), aggregation)
+        aggregation.end()
+
+        if (coverage.isEmpty()) {
+            LOGGER.info("[scoverage] Could not find coverage file, skipping...")
+        } else {
+            aggregation.statements(coverage.get().statementCount())
+
+            def writing = metrics.start('write reports').statements(coverage.get().statementCount())
+            try {
+                new ScoverageWriter(LOGGER, Runtime.getRuntime().availableProcessors(), metrics,
+                        parameters.incrementalHtml.get(), writing).write(
+                        parameters.sources.getFiles(),
+                        reportDir,
+                        coverage.get(),
+                        parameters.sourceEncoding.get(),
+                        parameters.coverageOutputCobertura.get(),
+                        parameters.coverageOutputXML.get(),
+                        parameters.coverageOutputHTML.get(),
+                        parameters.coverageDebug.get())
+            } finally {
+                writing.end()
+                def written = ScoverageMetrics.filesIn(reportDir) { true }
+                writing.files(written[0]).bytesWritten(written[1])
+            }
+        }
+    }
+
+    private static void aggregateAndCheck(ScoverageCheckParameters parameters, ScoverageMetrics metrics) {
+        def dirs = parameters.dataDirs.get().unique()
+        def aggregation = metrics.start('aggregate').files(dirs.size())
+        def coverage = CoverageData.aggregate(dirs, parameters.sourceRoot.get(), parallelism(parameters), cacheDir(parameters),
+                aggregation)
+        aggregation.end()
+
+        if (coverage.isEmpty()) {
+            LOGGER.info("[scoverage] Could not find coverage file, skipping...")
+        } else {
+            aggregation.statements(coverage.get().statementCount())
+
+            def checking = metrics.start('check').statements(coverage.get().statementCount())
+            try {
+                new CoverageChecker(LOGGER).checkRates(coverageRates(coverage.get()), parameters.checks.get())
+            } finally {
+                checking.end()
+            }
+        }
+    }
+
+    private static void aggregateAndMerge(ScoverageMergeParameters parameters, ScoverageMetrics metrics) {
+        def coverageFile = parameters.coverageFile.get()
+        coverageFile.delete()
+
+        def dirs = parameters.dataDirs.get().unique()
+        def sourceRoot = parameters.sourceRoot.get()
+        def aggregation = metrics.start('aggregate').files(dirs.size())
+        def coverage = parameters.snapshotDir.isPresent()
+                ? new CoverageSnapshots(parameters.snapshotDir.get(), sourceRoot, parallelism(parameters), cacheDir(parameters))
+                        .aggregate(dirs, aggregation)
+                : CoverageData.aggregate(dirs, sourceRoot, parallelism(parameters), cacheDir(parameters), aggregation)
+        aggregation.end()
+
+        if (coverage.isEmpty()) {
+            LOGGER.info("[scoverage] Could not find coverage file, skipping...")
+        } else {
+            aggregation.statements(coverage.get().statementCount())
+
+            def writing = metrics.start('write merged data').statements(coverage.get().statementCount())
+            try {
+                // the merged data is read by other tasks, so it is only ever seen whole
+                coverageFile.parentFile.mkdirs()
+                def tempFile = new File(coverageFile.parentFile, "${coverageFile.name}.tmp")
+                Serializer.serialize(coverage.get(), tempFile, sourceRoot)
+                Files.move(tempFile.toPath(), coverageFile.toPath(), StandardCopyOption.REPLACE_EXISTING)
+            } finally {
+                writing.end()
+                if (coverageFile.isFile()) {
+                    writing.files(1).bytesWritten(coverageFile.length())
+                }
+            }
+        }
+    }
+
+    private static File cacheDir(ScoverageReporterParameters parameters) {
+        parameters.cacheDir.getOrNull()
+    }
+
+    private static int parallelism(ScoverageReporterParameters parameters) {
+        parameters.aggregationParallelism.getOrElse(Runtime.getRuntime().availableProcessors())
+    }
+
+    /**
+     * Normalized rates of every coverage type, rounded the same way as in the reports,
+     * so that a check gives the same result whether it reads the reports or the data.
+     */
+    static Map<CoverageType, Double> coverageRates(Coverage coverage) {
+        [
+                (CoverageType.Line)     : rate(CoverageType.Line, coverage.statementCoverage()),
+                (CoverageType.Statement): rate(CoverageType.Statement, coverage.statementCoveragePercent()),
+                (CoverageType.Branch)   : rate(CoverageType.Branch, coverage.branchCoveragePercent())
+        ]
+    }
+
+    private static Double rate(CoverageType coverageType, double value) {
+        coverageType.normalize(BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).doubleValue())
+    }
+}
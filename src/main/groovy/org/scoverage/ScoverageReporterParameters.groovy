@@ -0,0 +1,32 @@
+package org.scoverage
+
+import org.gradle.api.file.ConfigurableFileCollection
+import org.gradle.api.provider.Property
+import org.gradle.workers.WorkParameters
+
+/**
+ * Parameters common to all work running the scoverage reporter.
+ */
+interface ScoverageReporterParameters extends WorkParameters {
+
+    /** the shared reporter classloaders; the work uses its own classloader when absent (e.g. in a forked process) */
+    Property<ReporterClassLoaderService> getClassLoaders()
+
+    /** the scoverage and scala binary versions of the reporter, which select the classloader */
+    Property<String> getReporterKey()
+
+    /** the reporter and its dependencies */
+    ConfigurableFileCollection getReporterClasspath()
+
+    /** where the statements read from the coverage files are cached; they are parsed every time when absent */
+    Property<File> getCacheDir()
+
+    /** maximum number of data directories aggregated concurrently; the number of processors when absent */
+    Property<Integer> getAggregationParallelism()
+
+    /** path of the task the work is done for, recorded in the metrics */
+    Property<String> getTaskPath()
+
+    /** where the metrics of the work are written; nothing is measured when absent */
+    Property<File> getMetricsFile()
+}
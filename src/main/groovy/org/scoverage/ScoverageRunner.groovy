@@ -1,34 +1,87 @@
 package org.scoverage
 
 import org.gradle.api.file.FileCollection
+import org.gradle.api.provider.Provider
 import org.gradle.api.tasks.Classpath
-
-import java.lang.reflect.Method
+import org.gradle.api.tasks.Internal
+import org.gradle.workers.WorkQueue
+import org.gradle.workers.WorkerExecutor
 
 class ScoverageRunner {
 
     @Classpath
     final FileCollection runtimeClasspath
 
-    ScoverageRunner(FileCollection runtimeClasspath) {
+    /** Maximum heap of a forked report process; reports run in the daemon (isolated classloader) when absent */
+    @Internal
+    final Provider<String> maxHeapSize
+
+    /** The reporter classloaders shared by the build; Gradle isolates the reporter per work item when absent */
+    @Internal
+    final Provider<ReporterClassLoaderService> classLoaders
+
+    /** The scoverage and scala binary versions of the reporter */
+    @Internal
+    final Provider<String> reporterKey
+
+    /** Maximum number of data directories aggregated concurrently; the number of processors when absent */
+    @Internal
+    final Provider<Integer> aggregationParallelism
+
+    ScoverageRunner(FileCollection runtimeClasspath, Provider<String> maxHeapSize,
+                    Provider<ReporterClassLoaderService> classLoaders, Provider<String> reporterKey,
+                    Provider<Integer> aggregationParallelism) {
 
         this.runtimeClasspath = runtimeClasspath
+        this.maxHeapSize = maxHeapSize
+        this.classLoaders = classLoaders
+        this.reporterKey = reporterKey
+        this.aggregationParallelism = aggregationParallelism
     }
 
-    def run(Closure<?> action) {
+    /**
+     * A work queue whose workers see the scoverage reporter (and its scala library) on the classpath,
+     * without leaking them into the classloader of the build.
+     * The work must be configured with {@link #configure}.
+     */
+    WorkQueue workQueue(WorkerExecutor workerExecutor) {
 
-        URLClassLoader cloader = (URLClassLoader) Thread.currentThread().getContextClassLoader()
+        if (isForked()) {
+            return workerExecutor.processIsolation { spec ->
+                spec.classpath.from(runtimeClasspath)
+                spec.forkOptions.maxHeapSize = maxHeapSize.get()
+            }
+        }
 
-        Method method = URLClassLoader.class.getDeclaredMethod("addURL", URL.class)
-        method.setAccessible(true)
+        if (classLoaders != null) {
+            // the work isolates itself within the shared reporter classloader
+            return workerExecutor.noIsolation()
+        }
 
-        runtimeClasspath.files.each { f ->
-            def url = f.toURI().toURL()
-            if (!cloader.getURLs().contains(url)) {
-                method.invoke(cloader, url)
-            }
+        return workerExecutor.classLoaderIsolation { spec ->
+            spec.classpath.from(runtimeClasspath)
         }
+    }
+
+    /**
+     * Passes the shared reporter classloader to the work, unless it runs in a forked process, and the aggregation
+     * parallelism.
+     */
+    void configure(ScoverageReporterParameters parameters) {
+
+        if (aggregationParallelism != null && aggregationParallelism.isPresent()) {
+            parameters.aggregationParallelism.set(aggregationParallelism)
+        }
+
+        if (!isForked() && classLoaders != null) {
+            parameters.classLoaders.set(classLoaders)
+            parameters.reporterKey.set(reporterKey)
+            parameters.reporterClasspath.from(runtimeClasspath)
+        }
+    }
+
+    private boolean isForked() {
 
-        action.call()
+        return maxHeapSize != null && maxHeapSize.isPresent()
     }
 }
@@ -0,0 +1,65 @@
+package org.scoverage
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.provider.Property
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.TaskAction
+
+import static org.gradle.api.tasks.PathSensitivity.RELATIVE
+
+/**
+ * Rewrites the instrumented classes for a single test task, so that the measurements of its test JVMs are written to
+ * its own measurement directory (see {@link MeasurementDirRewriter}). The test tasks of a project can then run
+ * concurrently, without their measurements being mixed up. Only the classes referring to the data directory are
+ * written, ahead of the instrumented classes on the classpath of the test task.
+ *
+ * The classes are rewritten with absolute paths, which are those the test JVMs write to, so the task is not cached.
+ */
+class ScoverageTestClasses extends DefaultTask {
+
+    /** the instrumented classes */
+    @InputFiles
+    @PathSensitive(RELATIVE)
+    final Property<File> classesDir = project.objects.property(File)
+
+    /** the data directory the classes were compiled with */
+    @Input
+    final Property<String> dataDir = project.objects.property(String)
+
+    /** where the test task's measurements are written */
+    @Input
+    final Property<String> measurementDir = project.objects.property(String)
+
+    @OutputDirectory
+    final Property<File> destinationDir = project.objects.property(File)
+
+    /** where the metrics of the task's phases are written */
+    @Internal
+    final Property<File> metricsFile = project.objects.property(File)
+
+    /** collects the metrics for the summary at the end of the build, when one is requested */
+    @Internal
+    final Property<ScoverageMetricsService> metricsService = project.objects.property(ScoverageMetricsService)
+
+    ScoverageTestClasses() {
+        metricsFile.set(project.layout.buildDirectory.file("reports/scoverage-metrics/${name}.json").map { it.asFile })
+    }
+
+    @TaskAction
+    def rewrite() {
+        metricsService.getOrNull()?.register(metricsFile.get())
+        def metrics = new ScoverageMetrics(path)
+        def rewriting = metrics.start('rewrite')
+        try {
+            rewriting.files(new MeasurementDirRewriter(dataDir.get(), measurementDir.get())
+                    .rewriteClasses(classesDir.get(), destinationDir.get()))
+        } finally {
+            rewriting.end()
+            metrics.write(metricsFile.get())
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.scoverage
+
+import org.gradle.api.file.ConfigurableFileCollection
+import org.gradle.api.provider.ListProperty
+import org.gradle.api.provider.Property
+
+/**
+ * Parameters of a single report (or aggregation) work item.
+ */
+interface ScoverageWorkParameters extends ScoverageReporterParameters {
+
+    /** directories with coverage data; a single one for a report, several for an aggregation */
+    ListProperty<File> getDataDirs()
+
+    /** root against which the paths in the coverage data are resolved */
+    Property<File> getSourceRoot()
+
+    /** where per data directory snapshots are kept between aggregations; the data is read directly when absent */
+    Property<File> getSnapshotDir()
+
+    ConfigurableFileCollection getSources()
+
+    Property<File> getReportDir()
+
+    /** whether existing content of the report directory should be deleted first */
+    Property<Boolean> getCleanReportDir()
+
+    Property<String> getSourceEncoding()
+
+    Property<Boolean> getCoverageOutputCobertura()
+
+    Property<Boolean> getCoverageOutputXML()
+
+    Property<Boolean> getCoverageOutputHTML()
+
+    Property<Boolean> getCoverageDebug()
+
+    /** whether only the pages of the HTML report whose coverage changed are written */
+    Property<Boolean> getIncrementalHtml()
+}
@@ -1,5 +1,6 @@
 package org.scoverage;
 
+import org.gradle.api.GradleException;
 import org.gradle.api.logging.Logger;
 import scala.Option;
 import scala.Some;
@@ -15,9 +16,20 @@ import scala.collection.JavaConverters;
 import java.io.File;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 /**
  * Util for generating and saving coverage files.
@@ -26,14 +38,32 @@ import java.util.Set;
 public class ScoverageWriter {
 
     private final Logger logger;
+    private final int parallelism;
+    private final ScoverageMetrics metrics;
+    private final boolean incrementalHtml;
+    private final ScoverageMetrics.Phase phase;
 
-    public ScoverageWriter(Logger logger) {
+    /**
+     * @param logger          logger for progress and failures
+     * @param parallelism     maximum number of reports written concurrently
+     * @param metrics         where the writing of each report is measured
+     * @param incrementalHtml whether only the pages of the HTML report whose coverage changed are written
+     *                        (see {@link IncrementalHtmlReport})
+     * @param phase           the phase the writing of all the reports is measured as a part of, if any
+     */
+    public ScoverageWriter(Logger logger, int parallelism, ScoverageMetrics metrics, boolean incrementalHtml,
+                           ScoverageMetrics.Phase phase) {
 
         this.logger = logger;
+        this.parallelism = parallelism;
+        this.metrics = metrics;
+        this.incrementalHtml = incrementalHtml;
+        this.phase = phase;
     }
 
     /**
      * Generates all reports from given data.
+     * The enabled reports are written concurrently; the call returns once all of them are done.
      *
      * @param sourceDirs               directories with project sources
      * @param reportDir               directory for generate reports
@@ -57,78 +87,197 @@ public class ScoverageWriter {
 
         reportDir.mkdirs();
 
-        Object scalaBuffer = Class.forName("scala.collection.JavaConverters")
-                .getMethod("asScalaBuffer", java.util.List.class)
-                .invoke(null, new ArrayList<>(sourceDirs));
-        Object sourceDirsSeq = scalaBuffer.getClass().getMethod("toIndexedSeq").invoke(scalaBuffer);
+        ReporterHandles handles = ReporterHandles.get();
+        Object sourceDirsSeq = handles.toIndexedSeq.invoke(handles.asScalaBuffer.invoke(null, new ArrayList<>(sourceDirs)));
+
+        Map<String, Callable<Void>> reports = new LinkedHashMap<>();
 
         if (coverageOutputCobertura) {
-            Constructor<CoberturaXmlWriter> cst;
-            try {
-                cst = CoberturaXmlWriter.class.getConstructor(
-                        Class.forName("scala.collection.immutable.Seq"),
-                        File.class,
-                        Class.forName("scala.Option"));
-            } catch (NoSuchMethodException | ClassNotFoundException e) {
-                cst = CoberturaXmlWriter.class.getConstructor(
-                        Class.forName("scala.collection.Seq"),
-                        File.class,
-                        Class.forName("scala.Option"));
-            }
-            CoberturaXmlWriter writer = cst.newInstance(sourceDirsSeq, reportDir, new Some<>(sourceEncoding));
-            writer.write(coverage);
-            logger.info("[scoverage] Written Cobertura XML report to " +
-                reportDir.getAbsolutePath() +
-                File.separator +
-                "cobertura.xml");
+            reports.put("Cobertura XML", measured("Cobertura XML", coverage, reportDir, name -> name.equals("cobertura.xml"), () -> {
+                CoberturaXmlWriter writer = handles.coberturaXmlWriter.newInstance(sourceDirsSeq, reportDir, new Some<>(sourceEncoding));
+                writer.write(coverage);
+                logger.info("[scoverage] Written Cobertura XML report to " +
+                    reportDir.getAbsolutePath() +
+                    File.separator +
+                    "cobertura.xml");
+                return null;
+            }));
         }
 
         if (coverageOutputXML) {
-            Constructor<ScoverageXmlWriter> cst;
-            try {
-                cst = ScoverageXmlWriter.class.getConstructor(
-                        Class.forName("scala.collection.immutable.Seq"),
-                        File.class,
-                        boolean.class,
-                        Class.forName("scala.Option"));
-            } catch (NoSuchMethodException | ClassNotFoundException e) {
-                cst = ScoverageXmlWriter.class.getConstructor(
-                        Class.forName("scala.collection.Seq"),
-                        File.class,
-                        boolean.class,
-                        Class.forName("scala.Option"));
-            }
-            ScoverageXmlWriter writer = cst.newInstance(sourceDirsSeq, reportDir, false, new Some<>(sourceEncoding));
-            writer.write(coverage);
-            logger.info("[scoverage] Written XML report to " +
-                reportDir.getAbsolutePath() +
-                File.separator +
-                Constants.XMLReportFilename());
-            if (coverageDebug) {
-                ScoverageXmlWriter writerDebug = cst.newInstance(sourceDirsSeq, reportDir, true, new Some<>(sourceEncoding));
-                writerDebug.write(coverage);
-                logger.info("[scoverage] Written XML report with debug information to " +
+            reports.put("XML", measured("XML", coverage, reportDir, name -> name.equals(Constants.XMLReportFilename()), () -> {
+                ScoverageXmlWriter writer = handles.scoverageXmlWriter.newInstance(sourceDirsSeq, reportDir, false, new Some<>(sourceEncoding));
+                writer.write(coverage);
+                logger.info("[scoverage] Written XML report to " +
                     reportDir.getAbsolutePath() +
                     File.separator +
-                    Constants.XMLReportFilenameWithDebug());
+                    Constants.XMLReportFilename());
+                return null;
+            }));
+            if (coverageDebug) {
+                reports.put("XML with debug information", measured("XML with debug information", coverage, reportDir,
+                        name -> name.equals(Constants.XMLReportFilenameWithDebug()), () -> {
+                    ScoverageXmlWriter writerDebug = handles.scoverageXmlWriter.newInstance(sourceDirsSeq, reportDir, true, new Some<>(sourceEncoding));
+                    writerDebug.write(coverage);
+                    logger.info("[scoverage] Written XML report with debug information to " +
+                        reportDir.getAbsolutePath() +
+                        File.separator +
+                        Constants.XMLReportFilenameWithDebug());
+                    return null;
+                }));
             }
         }
 
         if (coverageOutputHTML) {
-            Constructor<ScoverageHtmlWriter> cst;
+            reports.put("HTML", measured("HTML", coverage, reportDir, name -> name.endsWith(".html"), () -> {
+                if (incrementalHtml) {
+                    new IncrementalHtmlReport(logger, reportDir, sourceDirs, sourceEncoding, dir -> {
+                        try {
+                            return handles.scoverageHtmlWriter.newInstance(sourceDirsSeq, dir, new Some<>(sourceEncoding));
+                        } catch (ReflectiveOperationException e) {
+                            throw new GradleException("Could not create the HTML report writer", e);
+                        }
+                    }).write(coverage);
+                } else {
+                    ScoverageHtmlWriter writer = handles.scoverageHtmlWriter.newInstance(sourceDirsSeq, reportDir, new Some<>(sourceEncoding));
+                    writer.write(coverage);
+                }
+                logger.info("[scoverage] Written HTML report to " +
+                    reportDir.getAbsolutePath() +
+                    File.separator +
+                    "index.html");
+                return null;
+            }));
+        }
+
+        writeAll(reports);
+
+        logger.info("[scoverage] Coverage reports completed");
+    }
+
+    /**
+     * The reflective handles on the reporter, whose signatures differ between scala versions (e.g. taking a
+     * {@code scala.collection.immutable.Seq} or a {@code scala.collection.Seq}). They are looked up once per
+     * classloader of the reporter, i.e. once per build for each reporter version.
+     */
+    private static final class ReporterHandles {
+
+        private static volatile ReporterHandles instance;
+
+        private final Method asScalaBuffer;
+        private final Method toIndexedSeq;
+        private final Constructor<CoberturaXmlWriter> coberturaXmlWriter;
+        private final Constructor<ScoverageXmlWriter> scoverageXmlWriter;
+        private final Constructor<ScoverageHtmlWriter> scoverageHtmlWriter;
+
+        private ReporterHandles() throws ClassNotFoundException, NoSuchMethodException {
+
+            asScalaBuffer = Class.forName("scala.collection.JavaConverters").getMethod("asScalaBuffer", java.util.List.class);
+            toIndexedSeq = Class.forName("scala.collection.mutable.Buffer").getMethod("toIndexedSeq");
+            coberturaXmlWriter = seqConstructor(CoberturaXmlWriter.class, File.class, Option.class);
+            scoverageXmlWriter = seqConstructor(ScoverageXmlWriter.class, File.class, boolean.class, Option.class);
+            scoverageHtmlWriter = seqConstructor(ScoverageHtmlWriter.class, File.class, Option.class);
+        }
+
+        static ReporterHandles get() throws ClassNotFoundException, NoSuchMethodException {
+
+            ReporterHandles handles = instance;
+            if (handles == null) {
+                synchronized (ReporterHandles.class) {
+                    handles = instance;
+                    if (handles == null) {
+                        handles = new ReporterHandles();
+                        instance = handles;
+                    }
+                }
+            }
+            return handles;
+        }
+
+        /**
+         * The constructor taking the source directories as its first parameter, followed by the given ones.
+         */
+        private static <T> Constructor<T> seqConstructor(Class<T> type, Class<?>... parameterTypes) throws ClassNotFoundException, NoSuchMethodException {
+
+            Class<?>[] types = new Class<?>[parameterTypes.length + 1];
+            System.arraycopy(parameterTypes, 0, types, 1, parameterTypes.length);
             try {
-                cst = ScoverageHtmlWriter.class.getConstructor(Class.forName("scala.collection.immutable.Seq"), File.class, Option.class);
+                types[0] = Class.forName("scala.collection.immutable.Seq");
+                return type.getConstructor(types);
             } catch (NoSuchMethodException | ClassNotFoundException e) {
-                cst = ScoverageHtmlWriter.class.getConstructor(Class.forName("scala.collection.Seq"), File.class, Option.class);
+                types[0] = Class.forName("scala.collection.Seq");
+                return type.getConstructor(types);
             }
-            ScoverageHtmlWriter writer = cst.newInstance(sourceDirsSeq, reportDir, new Some<>(sourceEncoding));
-            writer.write(coverage);
-            logger.info("[scoverage] Written HTML report to " +
-                reportDir.getAbsolutePath() +
-                File.separator +
-                "index.html");
         }
+    }
 
-        logger.info("[scoverage] Coverage reports completed");
+    /**
+     * Measures the given report writer as a "write &lt;report&gt;" phase, on the thread that runs it, and as a part
+     * of the phase of all the reports if any.
+     * The files and bytes written are those in the report directory whose name matches the report's output.
+     */
+    private Callable<Void> measured(String report, Coverage coverage, File reportDir,
+                                    Predicate<String> outputs, Callable<Void> writer) {
+        Callable<Void> measured = () -> {
+            ScoverageMetrics.Phase reportPhase = metrics.start("write " + report).statements(coverage.statementCount());
+            try {
+                return writer.call();
+            } finally {
+                reportPhase.end();
+                long[] written = ScoverageMetrics.filesIn(reportDir, outputs);
+                reportPhase.files(written[0]).bytesWritten(written[1]);
+            }
+        };
+        return phase == null ? measured : () -> phase.onWorker(measured);
+    }
+
+    /**
+     * Runs the given report writers concurrently on a bounded pool and waits for all of them.
+     * The writers only read the (immutable) coverage data and write to distinct files, so they are independent.
+     * Every failing writer is logged on its own; the first failure is rethrown with the others attached as suppressed.
+     */
+    private void writeAll(Map<String, Callable<Void>> reports) {
+        if (reports.isEmpty()) {
+            return;
+        }
+
+        int threads = Math.max(1, Math.min(parallelism, reports.size()));
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "scoverage-report-writer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(contextClassLoader);
+            return thread;
+        });
+
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        try {
+            Map<String, Future<Void>> futures = new LinkedHashMap<>();
+            reports.forEach((name, report) -> futures.put(name, executor.submit(report)));
+
+            for (Map.Entry<String, Future<Void>> future : futures.entrySet()) {
+                try {
+                    future.getValue().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() instanceof InvocationTargetException ? e.getCause().getCause() : e.getCause();
+                    logger.error("[scoverage] Failed to write " + future.getKey() + " report", cause);
+                    failures.put(future.getKey(), cause);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GradleException("Interrupted while writing scoverage reports", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!failures.isEmpty()) {
+            Iterator<Throwable> causes = failures.values().iterator();
+            GradleException exception = new GradleException(
+                    "Failed to write scoverage reports: " + String.join(", ", failures.keySet()), causes.next());
+            causes.forEachRemaining(exception::addSuppressed);
+            throw exception;
+        }
     }
 }
@@ -0,0 +1,97 @@
+package org.scoverage;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The measurements of a single test task, kept in a sub-directory of the data directory named after the task.
+ *
+ * The test JVMs of the task write their measurements to the task directory (see {@link MeasurementDirRewriter}).
+ * Once the task is done, they are compacted (see {@link MeasurementFiles}) and the statements of the compilation are
+ * copied there. The task directory is thus a data directory of its own, while the data directory holds the
+ * measurements of all the test tasks through the task directories.
+ */
+public class TestMeasurements {
+
+    static final String COVERAGE_FILE = "scoverage.coverage";
+
+    private final File dataDir;
+    private final File taskDir;
+
+    /**
+     * @param dataDir  the data directory the instrumented classes were compiled with
+     * @param taskName name of the test task
+     */
+    public TestMeasurements(File dataDir, String taskName) {
+
+        this.dataDir = dataDir;
+        this.taskDir = taskDir(dataDir, taskName);
+    }
+
+    public static File taskDir(File dataDir, String taskName) {
+
+        return new File(dataDir, taskName);
+    }
+
+    /**
+     * Deletes the measurements of the given test tasks, as they refer to the statements of a previous compilation.
+     */
+    public static void deleteTaskDirs(File dataDir, Collection<String> taskNames) throws IOException {
+
+        for (String taskName : taskNames) {
+            FileUtils.deleteDirectory(taskDir(dataDir, taskName));
+        }
+    }
+
+    public File getTaskDir() {
+
+        return taskDir;
+    }
+
+    /**
+     * @return whether the task directory has its measurements
+     */
+    public boolean exist() {
+
+        return new File(taskDir, MeasurementFiles.COMPACT_FILE).isFile();
+    }
+
+    /**
+     * Deletes the measurements of the previous run of the task, and creates the task directory for the coming run.
+     */
+    public void beforeTest() throws IOException {
+
+        FileUtils.deleteDirectory(taskDir);
+        Files.createDirectories(taskDir.toPath());
+    }
+
+    /**
+     * Compacts the measurements written by the task.
+     *
+     * @return the number of measurement files of the task
+     */
+    public int afterTest() throws IOException {
+
+        Files.createDirectories(taskDir.toPath());
+
+        List<File> textFiles = MeasurementFiles.textFiles(taskDir);
+        MeasurementFiles.compact(textFiles, new File(taskDir, MeasurementFiles.COMPACT_FILE));
+        for (File file : textFiles) {
+            Files.delete(file.toPath());
+        }
+
+        // the statements are copied, as they are rewritten in place by the next compilation
+        File coverageFile = new File(dataDir, COVERAGE_FILE);
+        if (coverageFile.isFile()) {
+            Files.copy(coverageFile.toPath(), new File(taskDir, COVERAGE_FILE).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        return textFiles.size();
+    }
+}
@@ -12,6 +12,7 @@ import org.slf4j.LoggerFactory
 import java.nio.file.Paths
 
 import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
 import static org.junit.Assert.assertThat
 import static org.junit.jupiter.api.Assertions.assertThrows
 
@@ -90,12 +91,87 @@ class CoverageCheckerTest {
         checker.checkLineCoverage(reportDir, CoverageType.Branch, 0.45)
     }
 
+    // multiple checks
+
+    @Test
+    void doesNotFailWhenAllChecksPass() {
+        checker.checkCoverage(reportDir, [
+                check(CoverageType.Line, 0.66),
+                check(CoverageType.Statement, 0.33),
+                check(CoverageType.Branch, 0.5)
+        ])
+    }
+
+    @Test
+    void reportsAllViolationsTogether() {
+        GradleException e = assertThrows(GradleException.class, {
+            checker.checkCoverage(reportDir, [
+                    check(CoverageType.Line, 0.6),
+                    check(CoverageType.Statement, 1.0),
+                    check(CoverageType.Branch, 1.0)
+            ])
+        } as Executable)
+
+        assertThat(e, new CauseMatcher(CoverageChecker.errorMsg(0.3333, 1.0, CoverageType.Statement)))
+        assertThat(e, new CauseMatcher(CoverageChecker.errorMsg(0.5, 1.0, CoverageType.Branch)))
+        assertFalse(e.message.contains(CoverageType.Line.toString()))
+    }
+
+    @Test
+    void reportsMissingReportTogetherWithViolations() {
+        tempDir.newFile(CoverageType.Statement.fileName).text = '<scoverage statement-rate="10.00" branch-rate="50.00"/>'
+
+        GradleException e = assertThrows(GradleException.class, {
+            checker.checkCoverage(tempDir.getRoot(), [
+                    check(CoverageType.Line, 0.5),
+                    check(CoverageType.Statement, 0.5)
+            ])
+        } as Executable)
+
+        assertThat(e, new CauseMatcher(CoverageChecker.fileNotFoundErrorMsg(CoverageType.Line)))
+        assertThat(e, new CauseMatcher(CoverageChecker.errorMsg(0.1, 0.5, CoverageType.Statement)))
+    }
+
+    @Test
+    void checksGivenRates() {
+        checker.checkRates([(CoverageType.Line): 0.5d], [check(CoverageType.Line, 0.5)])
+
+        assertFailure(CoverageChecker.errorMsg(0.4, 0.5, CoverageType.Line), {
+            checker.checkRates([(CoverageType.Line): 0.4d], [check(CoverageType.Line, 0.5)])
+        })
+    }
+
+    // streaming
+
+    @Test
+    void readsRateWithoutParsingTheRestOfTheReport() {
+        // the content after the root element is truncated, so this only passes if it is never read
+        tempDir.newFile(CoverageType.Statement.fileName).text =
+                '<scoverage statement-rate="80.00" branch-rate="50.00"><packages><package name="truncated'
+
+        checker.checkLineCoverage(tempDir.getRoot(), CoverageType.Statement, 0.8)
+    }
+
+    @Test
+    void doesNotLoadExternalDtd() {
+        tempDir.newFile(CoverageType.Line.fileName).text =
+                '<?xml version="1.0"?>\n' +
+                '<!DOCTYPE coverage SYSTEM "http://localhost:1/coverage-04.dtd">\n' +
+                '<coverage line-rate="0.66"></coverage>'
+
+        checker.checkLineCoverage(tempDir.getRoot(), CoverageType.Line, 0.66)
+    }
+
     @Test
     void printsErrorMsgInEnglishWithUpTwoDecimalPointsPrecision() {
         assertEquals("Only 54.32% of project is covered by tests instead of 90% (coverageType: Branch)",
                 CoverageChecker.errorMsg(0.54321, 0.9, CoverageType.Branch))
     }
 
+    private static ScoverageExtension.CheckConfig check(CoverageType coverageType, double minimumRate) {
+        new ScoverageExtension.CheckConfig(coverageType: coverageType, minimumRate: BigDecimal.valueOf(minimumRate))
+    }
+
     private static void assertFailure(String message, Executable executable) {
         GradleException e = assertThrows(GradleException.class, executable)
         assertThat(e, new CauseMatcher(message))
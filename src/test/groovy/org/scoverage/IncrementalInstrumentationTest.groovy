@@ -0,0 +1,230 @@
+package org.scoverage
+
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.tree.ClassNode
+import org.objectweb.asm.tree.LdcInsnNode
+import org.objectweb.asm.tree.MethodInsnNode
+import org.slf4j.LoggerFactory
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+
+class IncrementalInstrumentationTest {
+
+    private static final String HEADER = '# Coverage data, format version: 3.0\n# ------------------------------------------\n'
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder()
+
+    private File sourceRoot
+    private File dataDir
+    private File classesDir
+
+    private IncrementalInstrumentation instrumentation
+
+    @Before
+    void setUp() {
+        sourceRoot = tempDir.newFolder('project')
+        dataDir = tempDir.newFolder('data')
+        classesDir = tempDir.newFolder('classes')
+        instrumentation = new IncrementalInstrumentation(LoggerFactory.getLogger(IncrementalInstrumentationTest.class),
+                dataDir, classesDir, sourceRoot, new File(tempDir.getRoot(), 'state'))
+
+        source('src/main/scala/org/hello/A.scala')
+        source('src/main/scala/org/hello/B.scala')
+    }
+
+    @Test
+    void compilesFromScratchWithoutPreviousStatements() {
+        writeClass('org/hello/A', 'A.scala', 1)
+
+        instrumentation.beforeCompile()
+
+        assertFalse(classesDir.exists())
+    }
+
+    @Test
+    void shiftsTheIdsOfTheRecompiledClasses() {
+        // compiled from scratch
+        instrumentation.beforeCompile()
+        writeClass('org/hello/A', 'A.scala', 1, 2)
+        writeClass('org/hello/B', 'B.scala', 3)
+        coverage([1: 'A', 2: 'A', 3: 'B'])
+        assertEquals([3L, 0L], instrumentation.afterCompile() as List)
+
+        // B is recompiled, its ids following the highest id (the compiler may number from 0)
+        instrumentation.beforeCompile()
+        Thread.sleep(1100) // a different modification time
+        writeClass('org/hello/B', 'B.scala', 1, 2)
+        coverage([1: 'B', 2: 'B'])
+        assertEquals([4L, 1L], instrumentation.afterCompile() as List)
+
+        assertEquals([1, 2], ids('org/hello/A'))
+        assertEquals([5, 6], ids('org/hello/B'))
+        assertEquals(['1:A', '2:A', '5:B', '6:B'], statements())
+    }
+
+    @Test
+    void compilesFromScratchOnceTheIdsAreTooSparse() {
+        instrumentation.beforeCompile()
+        writeClass('org/hello/A', 'A.scala', 1)
+        writeClass('org/hello/B', 'B.scala', 2)
+        coverage([1: 'A', 2: 'B'])
+        instrumentation.afterCompile()
+
+        instrumentation.beforeCompile()
+        assertTrue(classesDir.isDirectory())
+        Thread.sleep(1100) // a different modification time
+        writeClass('org/hello/B', 'B.scala', 1)
+        coverage([1: 'B'])
+        instrumentation.afterCompile()
+        assertEquals(['1:A', '4:B'], statements())
+
+        // the ids of the 2 statements span 0 to 4, more than twice their number
+        instrumentation.beforeCompile()
+        assertFalse(classesDir.exists())
+        assertFalse(new File(dataDir, 'scoverage.coverage').exists())
+
+        writeClass('org/hello/A', 'A.scala', 1)
+        writeClass('org/hello/B', 'B.scala', 2)
+        coverage([1: 'A', 2: 'B'])
+        assertEquals([2L, 0L], instrumentation.afterCompile() as List)
+        assertEquals(['1:A', '2:B'], statements())
+    }
+
+    @Test
+    void keepsTheModificationTimeOfTheShiftedClasses() {
+        instrumentation.beforeCompile()
+        writeClass('org/hello/A', 'A.scala', 1)
+        coverage([1: 'A'])
+        instrumentation.afterCompile()
+
+        instrumentation.beforeCompile()
+        Thread.sleep(1100) // a different modification time
+        writeClass('org/hello/A', 'A.scala', 1)
+        def classFile = new File(classesDir, 'org/hello/A.class')
+        assertTrue(classFile.setLastModified(1_000_000_000_000L))
+        coverage([1: 'A'])
+        instrumentation.afterCompile()
+
+        // as the compiler stamped it, so that it is not compiled again (with other ids) by the next compilation
+        assertEquals([3], ids('org/hello/A'))
+        assertEquals(1_000_000_000_000L, classFile.lastModified())
+    }
+
+    @Test
+    void dropsTheStatementsOfDeletedSources() {
+        instrumentation.beforeCompile()
+        writeClass('org/hello/A', 'A.scala', 1)
+        writeClass('org/hello/B', 'B.scala', 2)
+        coverage([1: 'A', 2: 'B'])
+        instrumentation.afterCompile()
+
+        instrumentation.beforeCompile()
+        new File(sourceRoot, 'src/main/scala/org/hello/B.scala').delete()
+        new File(classesDir, 'org/hello/B.class').delete()
+        Thread.sleep(1100)
+        writeClass('org/hello/A', 'A.scala', 1)
+        coverage([1: 'A'])
+        instrumentation.afterCompile()
+
+        assertEquals([4], ids('org/hello/A'))
+        assertEquals(['4:A'], statements())
+    }
+
+    @Test
+    void keepsTheStatementsWhenNothingIsCompiled() {
+        instrumentation.beforeCompile()
+        writeClass('org/hello/A', 'A.scala', 1)
+        coverage([1: 'A'])
+        instrumentation.afterCompile()
+
+        instrumentation.beforeCompile()
+        assertEquals([1L, 0L], instrumentation.afterCompile() as List)
+
+        assertEquals(['1:A'], statements())
+    }
+
+    @Test
+    void keepsThePreviousStatementsWhenTheCompilationFailed() {
+        instrumentation.beforeCompile()
+        writeClass('org/hello/A', 'A.scala', 1)
+        coverage([1: 'A'])
+        instrumentation.afterCompile()
+
+        instrumentation.beforeCompile()
+        coverage([1: 'B']) // written before the compilation failed
+
+        instrumentation.beforeCompile()
+        assertFalse(new File(dataDir, 'scoverage.coverage').exists())
+        assertTrue(classesDir.isDirectory())
+        instrumentation.afterCompile()
+
+        assertEquals(['1:A'], statements())
+    }
+
+    private void source(String path) {
+        def file = new File(sourceRoot, path)
+        file.parentFile.mkdirs()
+        file.text = 'package org.hello'
+    }
+
+    private void coverage(Map<Integer, String> statements) {
+        def text = new StringBuilder(HEADER)
+        statements.each { id, name ->
+            text << "$id\nsrc/main/scala/org/hello/${name}.scala\norg.hello\n$name\nClass\norg.hello.$name\nfoo\n" +
+                    "1\n2\n3\nfoo\napply\nfalse\n0\nfalse\nfoo(\n\nbar)\n\f\n"
+        }
+        new File(dataDir, 'scoverage.coverage').text = text.toString()
+    }
+
+    private List<String> statements() {
+        IncrementalInstrumentation.CoverageFile.read(new File(dataDir, 'scoverage.coverage')).records.collect {
+            assertEquals(['foo(', '', 'bar)'], it.subList(15, 18))
+            "${it[0]}:${it[3]}".toString()
+        }
+    }
+
+    /**
+     * Writes a class with a method calling the invoker for each id, the way the instrumented classes do.
+     */
+    private void writeClass(String name, String sourceFile, int... ids) {
+        def writer = new ClassWriter(ClassWriter.COMPUTE_MAXS)
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, 'java/lang/Object', null)
+        writer.visitSource(sourceFile, null)
+        def method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, 'foo', '()V', null, null)
+        method.visitCode()
+        ids.each { id ->
+            method.visitFieldInsn(Opcodes.GETSTATIC, 'scoverage/Invoker$', 'MODULE$', 'Lscoverage/Invoker$;')
+            method.visitIntInsn(Opcodes.BIPUSH, id)
+            method.visitLdcInsn(dataDir.absolutePath)
+            method.visitInsn(Opcodes.ICONST_0)
+            method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, 'scoverage/Invoker$', 'invoked', '(ILjava/lang/String;Z)V', false)
+        }
+        method.visitInsn(Opcodes.RETURN)
+        method.visitMaxs(0, 0)
+        method.visitEnd()
+        writer.visitEnd()
+
+        def file = new File(classesDir, "${name}.class")
+        file.parentFile.mkdirs()
+        file.bytes = writer.toByteArray()
+    }
+
+    private List<Integer> ids(String name) {
+        def node = new ClassNode()
+        new ClassReader(new File(classesDir, "${name}.class").bytes).accept(node, 0)
+        def instructions = node.methods.find { it.name == 'foo' }.instructions.toArray()
+        instructions.findAll { it instanceof MethodInsnNode && it.name == 'invoked' }.collect { call ->
+            def id = call.previous.previous.previous
+            id instanceof LdcInsnNode ? id.cst as Integer : id.operand as Integer
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.scoverage
+
+import groovy.transform.CompileStatic
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertNull
+
+class MeasurementDirRewriterTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder()
+
+    @Test
+    void replacesTheDataDirectory() {
+        def rewritten = new MeasurementDirRewriter('/data', '/data/test').rewrite(classFile(Measured))
+
+        def loaded = new ClassFileLoader(getClass().classLoader).load(Measured.name, rewritten)
+        assertEquals('/data/test', loaded.getMethod('dataDir').invoke(null))
+        assertEquals(42L, loaded.getMethod('id').invoke(null))
+    }
+
+    @Test
+    void leavesOutTheClassesWithoutTheDataDirectory() {
+        assertNull(new MeasurementDirRewriter('/other', '/other/test').rewrite(classFile(Measured)))
+    }
+
+    @Test
+    void writesOnlyTheRewrittenClasses() {
+        def classesDir = tempDir.newFolder('classes')
+        [Measured, NotMeasured].each { type ->
+            def file = new File(classesDir, "${type.name.replace('.', '/')}.class")
+            file.parentFile.mkdirs()
+            file.bytes = classFile(type)
+        }
+        new File(classesDir, 'resource.txt').text = '/data'
+
+        def destinationDir = new File(tempDir.root, 'rewritten')
+        assertEquals(1, new MeasurementDirRewriter('/data', '/data/test').rewriteClasses(classesDir, destinationDir))
+
+        def rewritten = new File(destinationDir, "${Measured.name.replace('.', '/')}.class")
+        assertEquals([rewritten], destinationDir.listFiles().collectMany { files(it) })
+        def loaded = new ClassFileLoader(getClass().classLoader).load(Measured.name, rewritten.bytes)
+        assertEquals('/data/test', loaded.getMethod('dataDir').invoke(null))
+    }
+
+    private static List<File> files(File file) {
+        file.directory ? file.listFiles().collectMany { files(it) } : [file]
+    }
+
+    private static byte[] classFile(Class<?> type) {
+        type.getResourceAsStream("/${type.name.replace('.', '/')}.class").bytes
+    }
+
+    @CompileStatic
+    private static class ClassFileLoader extends ClassLoader {
+        ClassFileLoader(ClassLoader parent) {
+            super(parent)
+        }
+
+        Class<?> load(String name, byte[] bytes) {
+            defineClass(name, bytes, 0, bytes.length)
+        }
+    }
+
+    static class Measured {
+        static String dataDir() {
+            '/data'
+        }
+
+        static long id() {
+            42L
+        }
+    }
+
+    static class NotMeasured {
+        static String dataDir() {
+            '/other'
+        }
+    }
+}
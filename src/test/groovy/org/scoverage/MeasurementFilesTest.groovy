@@ -0,0 +1,111 @@
+package org.scoverage
+
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import static org.junit.Assert.assertEquals
+
+class MeasurementFilesTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder()
+
+    private File dataDir
+
+    @Before
+    void setUp() {
+        dataDir = tempDir.newFolder('scoverage-data')
+    }
+
+    @Test
+    void readsTextMeasurements() {
+        new File(dataDir, 'scoverage.measurements.a.1').text = '3\n1\n'
+        new File(dataDir, 'scoverage.measurements.a.2').text = '12 org.hello.WorldSuite\n\n1\n'
+        new File(dataDir, 'scoverage.coverage').text = '1\n2\n'
+
+        assertEquals([1, 3, 12], invoked(dataDir))
+    }
+
+    @Test
+    void compactsTextMeasurements() {
+        def text1 = new File(dataDir, 'scoverage.measurements.a.1')
+        text1.text = '3\n1\n'
+        def text2 = new File(dataDir, 'scoverage.measurements.a.2')
+        text2.text = '100000\n'
+
+        def compactFile = new File(tempDir.newFolder('test'), MeasurementFiles.COMPACT_FILE)
+        MeasurementFiles.compact([text1, text2], compactFile)
+
+        assertEquals([1, 3, 100000], MeasurementFiles.readCompact(compactFile).keySet() as List)
+        // a few bytes per invoked statement, whatever the number of threads
+        assertEquals(4 + 4 + 4 + 2 + 4 + 3 + 3 + 5, compactFile.length())
+    }
+
+    @Test
+    void keepsTheTestsOfEachStatement() {
+        def text1 = new File(dataDir, 'scoverage.measurements.a.1')
+        text1.text = '3 org.hello.WorldSuite\n1 org.hello.WorldSuite\n'
+        def text2 = new File(dataDir, 'scoverage.measurements.a.2')
+        text2.text = '3 org.hello.WorldSuite\n3 org.hello.OtherSuite\n3\n'
+
+        def compactFile = new File(tempDir.newFolder('test'), MeasurementFiles.COMPACT_FILE)
+        def compacted = MeasurementFiles.compact([text1, text2], compactFile)
+
+        def expected = [
+                1: ['org.hello.WorldSuite'] as SortedSet,
+                3: ['', 'org.hello.OtherSuite', 'org.hello.WorldSuite'] as SortedSet
+        ]
+        assertEquals(expected, compacted)
+        assertEquals(expected, MeasurementFiles.readCompact(compactFile))
+    }
+
+    @Test
+    void readsCompactedBitsets() {
+        def compactFile = new File(dataDir, MeasurementFiles.COMPACT_FILE)
+        def bitSet = new BitSet()
+        bitSet.set(2)
+        bitSet.set(70)
+        compactFile.withDataOutputStream { output ->
+            output.writeInt(0x53434f56)
+            output.writeInt(1)
+            output.writeInt(bitSet.toByteArray().length)
+            output.write(bitSet.toByteArray())
+        }
+
+        assertEquals([2: [''] as SortedSet, 70: [''] as SortedSet], MeasurementFiles.invoked(dataDir))
+    }
+
+    @Test
+    void readsTheMeasurementsOfTheTestTasks() {
+        new File(dataDir, 'scoverage.measurements.a.1').text = '1\n'
+        def test = new File(dataDir, 'test')
+        test.mkdirs()
+        MeasurementFiles.writeCompact(ids(2, 3), new File(test, MeasurementFiles.COMPACT_FILE))
+        def intTest = new File(dataDir, 'intTest')
+        intTest.mkdirs()
+        MeasurementFiles.writeCompact(ids(3, 4), new File(intTest, MeasurementFiles.COMPACT_FILE))
+
+        assertEquals([1, 2, 3, 4], invoked(dataDir))
+        assertEquals([2, 3], invoked(test))
+        assertEquals(['scoverage.measurements.a.1', 'intTest/scoverage.invoked', 'test/scoverage.invoked'],
+                MeasurementFiles.files(dataDir).collect { dataDir.toPath().relativize(it.toPath()).toString() })
+    }
+
+    @Test
+    void noMeasurements() {
+        assertEquals([], invoked(dataDir))
+        assertEquals([], invoked(new File(dataDir, 'missing')))
+    }
+
+    private static SortedMap<Integer, SortedSet<String>> ids(int... ids) {
+        def invoked = new TreeMap<Integer, SortedSet<String>>()
+        ids.each { invoked[it] = [''] as SortedSet }
+        invoked
+    }
+
+    private static List<Integer> invoked(File dir) {
+        MeasurementFiles.invoked(dir).keySet() as List
+    }
+}
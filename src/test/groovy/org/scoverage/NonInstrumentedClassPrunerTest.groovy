@@ -0,0 +1,107 @@
+package org.scoverage
+
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.slf4j.LoggerFactory
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+
+class NonInstrumentedClassPrunerTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder()
+
+    private File originalDir
+    private File instrumentedDir
+    private File prunedDir
+    private File manifestFile
+
+    private NonInstrumentedClassPruner pruner
+
+    @Before
+    void setUp() {
+        originalDir = tempDir.newFolder('original')
+        instrumentedDir = tempDir.newFolder('instrumented')
+        prunedDir = new File(tempDir.getRoot(), 'pruned')
+        manifestFile = new File(tempDir.getRoot(), 'digests/manifest')
+        pruner = new NonInstrumentedClassPruner(LoggerFactory.getLogger(NonInstrumentedClassPrunerTest.class), manifestFile)
+    }
+
+    @Test
+    void leavesOutOnlyIdenticalClasses() {
+        write(originalDir, 'org/hello/Same.class', 'same')
+        write(instrumentedDir, 'org/hello/Same.class', 'same')
+        write(originalDir, 'org/hello/SameSize.class', 'abcd')
+        write(instrumentedDir, 'org/hello/SameSize.class', 'abce')
+        write(originalDir, 'org/hello/Instrumented.class', 'a')
+        write(instrumentedDir, 'org/hello/Instrumented.class', 'abc')
+        write(instrumentedDir, 'org/hello/OnlyInstrumented.class', 'only')
+
+        assertEquals(1, pruner.prune(originalDir, instrumentedDir, prunedDir))
+
+        assertFalse(new File(prunedDir, 'org/hello/Same.class').exists())
+        assertEquals('abce', new File(prunedDir, 'org/hello/SameSize.class').text)
+        assertEquals('abc', new File(prunedDir, 'org/hello/Instrumented.class').text)
+        assertEquals('only', new File(prunedDir, 'org/hello/OnlyInstrumented.class').text)
+
+        // the compiled classes are left untouched
+        assertTrue(new File(instrumentedDir, 'org/hello/Same.class').exists())
+    }
+
+    @Test
+    void removesClassesWhichAreNoLongerCompiled() {
+        write(instrumentedDir, 'org/hello/Removed.class', 'removed')
+        assertEquals(0, pruner.prune(originalDir, instrumentedDir, prunedDir))
+        assertTrue(new File(prunedDir, 'org/hello/Removed.class').exists())
+
+        new File(instrumentedDir, 'org/hello/Removed.class').delete()
+        assertEquals(0, pruner.prune(originalDir, instrumentedDir, prunedDir))
+        assertFalse(new File(prunedDir, 'org/hello/Removed.class').exists())
+    }
+
+    @Test
+    void keepsDigestsOfOriginalClassesBetweenRuns() {
+        write(originalDir, 'org/hello/Same.class', 'same')
+        write(instrumentedDir, 'org/hello/Same.class', 'same')
+
+        assertEquals(1, pruner.prune(originalDir, instrumentedDir, prunedDir))
+        assertTrue(manifestFile.text.contains('org/hello/Same.class'.replace('/', File.separator)))
+
+        assertEquals(1, pruner.prune(originalDir, instrumentedDir, prunedDir))
+    }
+
+    @Test
+    void doesNotTrustDigestsOfChangedOriginalClasses() {
+        write(originalDir, 'org/hello/Changed.class', 'abcd')
+        write(instrumentedDir, 'org/hello/Changed.class', 'abcd')
+        assertEquals(1, pruner.prune(originalDir, instrumentedDir, prunedDir))
+
+        write(originalDir, 'org/hello/Changed.class', 'efgh')
+        new File(originalDir, 'org/hello/Changed.class').setLastModified(System.currentTimeMillis() + 10000)
+        write(instrumentedDir, 'org/hello/Changed.class', 'abcd')
+
+        assertEquals(0, pruner.prune(originalDir, instrumentedDir, prunedDir))
+        assertTrue(new File(prunedDir, 'org/hello/Changed.class').exists())
+    }
+
+    @Test
+    void ignoresMissingDirectories() {
+        write(instrumentedDir, 'org/hello/Instrumented.class', 'abc')
+        assertEquals(0, pruner.prune(new File(tempDir.getRoot(), 'missing'), instrumentedDir, prunedDir))
+        assertTrue(new File(prunedDir, 'org/hello/Instrumented.class').exists())
+
+        assertEquals(0, pruner.prune(originalDir, new File(tempDir.getRoot(), 'missing'), prunedDir))
+        assertTrue(prunedDir.isDirectory())
+        assertEquals(0, prunedDir.list().length)
+    }
+
+    private static void write(File dir, String relativePath, String content) {
+        def file = new File(dir, relativePath)
+        file.parentFile.mkdirs()
+        file.text = content
+    }
+}
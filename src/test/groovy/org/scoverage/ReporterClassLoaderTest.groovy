@@ -0,0 +1,56 @@
+package org.scoverage
+
+import groovy.transform.CompileStatic
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertSame
+import static org.junit.Assert.assertTrue
+
+// statically compiled, as a dynamic call on a class loaded by the reporter classloader would link it to the reporter
+@CompileStatic
+class ReporterClassLoaderTest {
+
+    private ReporterClassLoader classLoader
+
+    @Before
+    void setUp() {
+        classLoader = new ReporterClassLoader(Collections.<File>emptyList(), ReporterClassLoaderTest.getClassLoader())
+    }
+
+    @After
+    void tearDown() {
+        classLoader.close()
+    }
+
+    @Test
+    void loadsPluginClassesLinkingToTheReporter() {
+        def writer = classLoader.loadClass('org.scoverage.ScoverageWriter')
+
+        assertSame(classLoader, writer.getClassLoader())
+    }
+
+    @Test
+    void sharesOtherClassesWithThePlugin() {
+        assertSame(CoverageType, classLoader.loadClass('org.scoverage.CoverageType'))
+        assertSame(ScoverageWorkParameters, classLoader.loadClass('org.scoverage.ScoverageWorkParameters'))
+        assertSame(ScoverageMetrics, classLoader.loadClass('org.scoverage.ScoverageMetrics'))
+        assertSame(String, classLoader.loadClass('java.lang.String'))
+    }
+
+    @Test
+    void isolatesTheReporterAndScala() {
+        assertTrue(ReporterClassLoader.isIsolated('scoverage.reporter.CoverageAggregator'))
+        assertTrue(ReporterClassLoader.isIsolated('scala.collection.immutable.Seq'))
+        assertTrue(ReporterClassLoader.isIsolated('org.scoverage.CoverageSnapshots'))
+        assertTrue(ReporterClassLoader.isIsolated('org.scoverage.CoverageSnapshots$_aggregate_closure1'))
+        assertTrue(ReporterClassLoader.isIsolated('org.scoverage.CoverageData'))
+        assertTrue(ReporterClassLoader.isIsolated('org.scoverage.CoverageCache'))
+        assertTrue(ReporterClassLoader.isIsolated('org.scoverage.IncrementalHtmlReport'))
+        assertFalse(ReporterClassLoader.isIsolated('org.scoverage.CoverageSnapshotsTest'))
+        assertFalse(ReporterClassLoader.isIsolated('org.scoverage.CoverageChecker'))
+        assertFalse(ReporterClassLoader.isIsolated('org.scoverage.MeasurementFiles'))
+    }
+}
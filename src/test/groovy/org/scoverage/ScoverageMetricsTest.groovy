@@ -0,0 +1,92 @@
+package org.scoverage
+
+import groovy.json.JsonSlurper
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import java.lang.management.ManagementFactory
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+
+class ScoverageMetricsTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder()
+
+    @Test
+    void writesMeasuredPhases() {
+        def metrics = new ScoverageMetrics(':sub:reportScoverage')
+        def aggregation = metrics.start('aggregate').files(3).statements(100)
+        aggregation.end()
+        def writing = metrics.start('write "HTML"')
+        writing.end()
+        writing.files(2).bytesWritten(1024)
+
+        def file = new File(tempDir.getRoot(), 'metrics/reportScoverage.json')
+        metrics.write(file)
+
+        def json = new JsonSlurper().parse(file)
+        assertEquals(':sub:reportScoverage', json.task)
+        assertEquals(['aggregate', 'write "HTML"'], json.phases*.name)
+
+        def aggregate = json.phases[0]
+        assertTrue(aggregate.wallTimeNanos >= 0)
+        assertEquals(3, aggregate.files)
+        assertEquals(100, aggregate.statements)
+        assertFalse(aggregate.containsKey('bytesWritten'))
+
+        def write = json.phases[1]
+        assertEquals(2, write.files)
+        assertEquals(1024, write.bytesWritten)
+        assertFalse(write.containsKey('statements'))
+    }
+
+    @Test
+    void addsTheWorkOfOtherThreads() {
+        def threads = ManagementFactory.getThreadMXBean()
+        if (!threads.isCurrentThreadCpuTimeSupported() || !threads.isThreadCpuTimeEnabled()) {
+            return
+        }
+
+        def phase = new ScoverageMetrics(':reportScoverage').start('aggregate')
+        long workerCpuTime = 0
+        def worker = Thread.start {
+            phase.onWorker {
+                long start = threads.currentThreadCpuTime
+                long sum = 0
+                while (threads.currentThreadCpuTime - start < 50_000_000L) {
+                    sum += sum.hashCode()
+                }
+                workerCpuTime = threads.currentThreadCpuTime - start
+            }
+        }
+        worker.join()
+        phase.end()
+
+        assertTrue(phase.cpuTimeNanos >= workerCpuTime)
+        assertTrue(workerCpuTime >= 50_000_000L)
+    }
+
+    @Test
+    void writesNoPhases() {
+        def file = new File(tempDir.getRoot(), 'checkScoverage.json')
+        new ScoverageMetrics(':checkScoverage').write(file)
+
+        assertEquals([], new JsonSlurper().parse(file).phases)
+    }
+
+    @Test
+    void countsMatchingFiles() {
+        def dir = tempDir.newFolder('report')
+        new File(dir, 'index.html').text = 'abc'
+        new File(dir, 'pkg').mkdirs()
+        new File(dir, 'pkg/File.scala.html').text = 'de'
+        new File(dir, 'scoverage.xml').text = 'xml'
+
+        assertEquals([2L, 5L], ScoverageMetrics.filesIn(dir) { it.endsWith('.html') } as List)
+        assertEquals([0L, 0L], ScoverageMetrics.filesIn(new File(dir, 'missing')) { true } as List)
+    }
+}
@@ -0,0 +1,26 @@
+package org.scoverage
+
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+
+class ScoverageProjectsTest {
+
+    private static final List<String> PATHS = [':', ':a', ':a:b', ':c:d', ':c:d:e', ':cd']
+
+    @Test
+    void nearestDescendantsOfTheRootProject() {
+        assertEquals([':a', ':c:d', ':cd'], ScoverageProjects.nearestDescendants(':', PATHS))
+    }
+
+    @Test
+    void nearestDescendantsLookThroughTheProjectsWithoutThePlugin() {
+        assertEquals([':c:d'], ScoverageProjects.nearestDescendants(':c', PATHS))
+    }
+
+    @Test
+    void nearestDescendantsOfAProject() {
+        assertEquals([':a:b'], ScoverageProjects.nearestDescendants(':a', PATHS))
+        assertEquals([], ScoverageProjects.nearestDescendants(':a:b', PATHS))
+    }
+}
@@ -0,0 +1,103 @@
+package org.scoverage
+
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+
+class TestMeasurementsTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder()
+
+    private File dataDir
+
+    @Before
+    void setUp() {
+        dataDir = tempDir.newFolder('scoverage-data')
+        new File(dataDir, 'scoverage.coverage').text = 'statements'
+    }
+
+    @Test
+    void compactsTheMeasurementsOfTheTask() {
+        def test = new TestMeasurements(dataDir, 'test')
+        test.beforeTest()
+        measure(test.taskDir, 'a.1', 1)
+        assertEquals(1, test.afterTest())
+
+        def intTest = new TestMeasurements(dataDir, 'intTest')
+        intTest.beforeTest()
+        measure(intTest.taskDir, 'b.1', 2)
+        measure(intTest.taskDir, 'b.2', 3)
+        assertEquals(2, intTest.afterTest())
+
+        assertEquals(['scoverage.coverage', 'scoverage.invoked'] as Set, names(test.taskDir))
+        assertEquals(['scoverage.coverage', 'scoverage.invoked'] as Set, names(intTest.taskDir))
+        assertTrue(test.exist())
+        assertTrue(intTest.exist())
+        assertEquals([1], invoked(test.taskDir))
+        assertEquals([2, 3], invoked(intTest.taskDir))
+
+        // the data directory holds the measurements of all the tasks
+        assertEquals(['intTest', 'scoverage.coverage', 'test'] as Set, names(dataDir))
+        assertEquals([1, 2, 3], invoked(dataDir))
+    }
+
+    @Test
+    void deletesThePreviousMeasurementsOfTheTask() {
+        def test = new TestMeasurements(dataDir, 'test')
+        test.beforeTest()
+        measure(test.taskDir, 'a.1', 1)
+        test.afterTest()
+
+        def intTest = new TestMeasurements(dataDir, 'intTest')
+        intTest.beforeTest()
+        measure(intTest.taskDir, 'b.1', 2)
+        intTest.afterTest()
+
+        test.beforeTest()
+        assertFalse(test.exist())
+        assertTrue(test.taskDir.isDirectory())
+        assertEquals([2], invoked(dataDir))
+
+        measure(test.taskDir, 'a.2', 3)
+        assertEquals(1, test.afterTest())
+        assertEquals([3], invoked(test.taskDir))
+        assertEquals([2], invoked(intTest.taskDir))
+    }
+
+    @Test
+    void deletesTheMeasurementsOfTheGivenTasks() {
+        def test = new TestMeasurements(dataDir, 'test')
+        test.beforeTest()
+        measure(test.taskDir, 'a.1', 1)
+        test.afterTest()
+        new File(dataDir, 'other').mkdir()
+
+        TestMeasurements.deleteTaskDirs(dataDir, ['test', 'intTest'])
+
+        assertFalse(test.exist())
+        assertEquals(['other', 'scoverage.coverage'] as Set, names(dataDir))
+    }
+
+    @Test
+    void noMeasurementsWithoutTaskDirectory() {
+        measure(dataDir, 'a.1', 1)
+        assertFalse(new TestMeasurements(dataDir, 'test').exist())
+    }
+
+    private static void measure(File dir, String name, int id) {
+        new File(dir, "scoverage.measurements.$name").text = "$id\n"
+    }
+    private static List<Integer> invoked(File dir) {
+        MeasurementFiles.invoked(dir).keySet() as List
+    }
+
+    private static Set<String> names(File dir) {
+        dir.list() as Set
+    }
+}